@@ -32,6 +32,7 @@ import {
     SocketIceCandidate,
     SocketOffer,
     SocketPeerDirectConnect,
+    SocketPeerUpdate,
     SocketPingPong,
     SocketResponseType,
 } from "@/services/p2p/socket-response";
@@ -42,6 +43,7 @@ import {
 export class P2P {
     private static readonly CHUNK_SIZE: number = 64 * 1024;
     private static readonly RECONNECT_DELAY: number = 3000;
+    private static readonly BATCH_DELAY: number = 10;
 
     private ws!: WebSocket;
     private readonly env: Env = inject<Env>(Env);
@@ -53,6 +55,8 @@ export class P2P {
     private readonly notification: NotificationService = inject<NotificationService>(NotificationService);
 
     private readonly dcs: Map<string, RTCDataChannel> = new Map<string, RTCDataChannel>();
+    private readonly pendingSignals: unknown[] = [];
+    private batchTimer: ReturnType<typeof setTimeout> | null = null;
     public readonly pcs = signal<Map<string, Peer>>(new Map<string, Peer>());
     public readonly isConnected = signal<boolean>(true);
     public readonly sendingFiles = signal<Map<string, SendingFile>>(new Map<string, SendingFile>());
@@ -60,7 +64,7 @@ export class P2P {
 
     public init(): void {
         console.log("[WebSocket] Initialize connection");
-        this.ws = new WebSocket(this.env.wsUrl);
+        this.ws = new WebSocket(this.connectUrl());
 
         this.ws.onopen = (): void => {
             console.log("[WebSocket] Connection opened");
@@ -69,7 +73,10 @@ export class P2P {
             this.pcs.set(new Map<string, Peer>());
             this.isConnected.set(true);
 
-            this.connectWebSocket();
+            if (this.session.authToken) {
+                this.connectWebSocket();
+            }
+
             this.connectPersistedIds();
 
             if (this.routerConnectionId) {
@@ -103,6 +110,8 @@ export class P2P {
                     return this.handleIceCandidate(data as SocketIceCandidate);
                 case SocketResponseType.END_OF_ICE_CANDIDATES:
                     return this.handleEndOfIceCandidates(data as SocketEndOfIceCandidates);
+                case SocketResponseType.PEER_UPDATE:
+                    return this.handlePeerUpdate(data as SocketPeerUpdate);
                 default:
                     console.log("[WebSocket] Unhandled message received", data);
                     break;
@@ -112,6 +121,7 @@ export class P2P {
         this.ws.onclose = async (): Promise<void> => {
             console.warn(`[WebSocket] Connection closed, retrying in ${P2P.RECONNECT_DELAY} ms`);
             this.isConnected.set(false);
+            this.pendingSignals.length = 0;
             await this.delay(P2P.RECONNECT_DELAY);
             this.init();
         };
@@ -123,6 +133,29 @@ export class P2P {
         };
     }
 
+    /**
+     * Without an auth token the CONNECT request is passed with the upgrade, so
+     * the server answers with CONNECT as soon as the socket is open. The token
+     * is never put in the URL, where proxies and access logs would keep it, and
+     * is sent with CONNECT once the socket is open instead.
+     */
+    private connectUrl(): string {
+        const name: string | null = this.session.name;
+
+        if (!name) {
+            throw new Error("[WebSocket] Name is required");
+        }
+
+        const url: URL = new URL(this.env.wsUrl);
+
+        if (!this.session.authToken) {
+            url.searchParams.set("name", name);
+            url.searchParams.set("discoveryMode", this.session.discoveryMode);
+        }
+
+        return url.toString();
+    }
+
     private connectWebSocket(): void {
         const name: string | null = this.session.name;
         const authToken: string | null = this.session.authToken;
@@ -180,11 +213,44 @@ export class P2P {
     }
 
     private sendSocketSignal<T>(message: T): void {
+        this.flushSocketSignals();
+
         if (this.ws?.readyState === WebSocket.OPEN) {
             this.ws.send(JSON.stringify(message));
         }
     }
 
+    /**
+     * Offers, answers and ICE candidates come in bursts while connecting to
+     * many neighbours, signals queued within BATCH_DELAY are sent together
+     * in one BATCH frame.
+     */
+    private queueSocketSignal<T>(message: T): void {
+        this.pendingSignals.push(message);
+
+        if (!this.batchTimer) {
+            this.batchTimer = setTimeout((): void => this.flushSocketSignals(), P2P.BATCH_DELAY);
+        }
+    }
+
+    private flushSocketSignals(): void {
+        if (this.batchTimer) {
+            clearTimeout(this.batchTimer);
+            this.batchTimer = null;
+        }
+
+        const signals: unknown[] = this.pendingSignals.splice(0);
+
+        if (signals.length === 0 || this.ws?.readyState !== WebSocket.OPEN) {
+            return;
+        }
+
+        this.ws.send(JSON.stringify(signals.length === 1 ? signals[0] : {
+            type: SocketRequestType.BATCH,
+            data: signals,
+        }));
+    }
+
     private delay(n: number): Promise<void> {
         return new Promise<void>((resolve): void => {
             setTimeout(resolve, n);
@@ -203,6 +269,11 @@ export class P2P {
         this.closeConnection(data.peerId);
     }
 
+    private handlePeerUpdate(data: SocketPeerUpdate): void {
+        console.log(`[Socket] Peer ID ${data.peerId} changed settings`);
+        this.renamePeer(data.peerId, data.name);
+    }
+
     private handlePingPong(data: SocketPingPong): void {
         console.log("[Socket] Received ping");
         this.session.iceServers = data.iceServers;
@@ -213,7 +284,7 @@ export class P2P {
         console.log(`[WebSocket] Received an offer request from peer ID ${data.peerId}`);
         const offer: RTCSessionDescription | null = await this.createOffer(data.peerId, data.name, data.device, data.discoveryMode);
 
-        this.sendSocketSignal({
+        this.queueSocketSignal({
             type: SocketRequestType.OFFER,
             data: {
                 offer: offer,
@@ -227,7 +298,7 @@ export class P2P {
         console.log("[WebSocket] Received offer from peer and creating an answer");
         const answer: RTCSessionDescription | null = await this.createAnswer(data.peerId, data.offer, data.name, data.device, data.discoveryMode);
 
-        this.sendSocketSignal({
+        this.queueSocketSignal({
             type: SocketRequestType.ANSWER,
             data: {
                 answer: answer,
@@ -286,7 +357,7 @@ export class P2P {
 
         pc.onicecandidate = (event: RTCPeerConnectionIceEvent): void => {
             if (event.candidate) {
-                this.sendSocketSignal({
+                this.queueSocketSignal({
                     type: SocketRequestType.ICE_CANDIDATE,
                     data: {
                         peerId,
@@ -294,7 +365,7 @@ export class P2P {
                     },
                 });
             } else {
-                this.sendSocketSignal({
+                this.queueSocketSignal({
                     type: SocketRequestType.END_OF_ICE_CANDIDATES,
                     data: {
                         peerId,
@@ -701,14 +772,16 @@ export class P2P {
     }
 
     private handlePeerDataChanges(dc: RTCDataChannel, data: RtcPeerDataChanges): void {
-        const peerId: string = this.getPeerIdByDataChannel(dc);
+        this.renamePeer(this.getPeerIdByDataChannel(dc), data.name);
+    }
 
+    private renamePeer(peerId: string, name: string): void {
         this.pcs.update(prev => {
             const next = new Map(prev);
             const peer = next.get(peerId);
 
             if (peer) {
-                peer.name = data.name;
+                peer.name = name;
                 next.set(peerId, peer);
             }
 
@@ -9,6 +9,7 @@ export enum SocketRequestType {
     ICE_CANDIDATE = "ICE_CANDIDATE",
     END_OF_ICE_CANDIDATES = "END_OF_ICE_CANDIDATES",
     CHANGE_SETTINGS = "CHANGE_SETTINGS",
+    BATCH = "BATCH",
 }
 
 interface SocketRequest {
@@ -11,6 +11,7 @@ export enum SocketResponseType {
     PEER_CONNECT = "PEER_CONNECT",
     ICE_CANDIDATE = "ICE_CANDIDATE",
     END_OF_ICE_CANDIDATES = "END_OF_ICE_CANDIDATES",
+    PEER_UPDATE = "PEER_UPDATE",
 }
 
 interface SocketResponse {
@@ -74,3 +75,8 @@ export interface SocketIceCandidate extends SocketResponse {
 export interface SocketEndOfIceCandidates extends SocketResponse {
     peerId: string;
 }
+
+export interface SocketPeerUpdate extends SocketResponse {
+    peerId: string;
+    name: string;
+}
@@ -39,3 +39,41 @@ dependencies {
 tasks.withType<Test> {
     useJUnitPlatform()
 }
+
+// Allocation depends on what the JIT saw before, so budgets are measured and checked in a JVM of their own
+val allocationBudgets = tasks.register<Test>("allocationBudgets") {
+    group = "verification"
+    description = "Checks the allocation budgets of the signaling paths, -PcalibrateAllocations measures them instead"
+    testClassesDirs = sourceSets["test"].output.classesDirs
+    classpath = sourceSets["test"].runtimeClasspath
+    filter.includeTestsMatching("*AllocationBudgetTest")
+
+    if (project.hasProperty("calibrateAllocations")) {
+        systemProperty("allocation.calibrate", "true")
+    }
+}
+
+tasks.test {
+    filter.excludeTestsMatching("*AllocationBudgetTest")
+    finalizedBy(allocationBudgets)
+}
+
+springBoot {
+    mainClass = "com.aircloud.server.ServerApplication"
+}
+
+tasks.register<JavaExec>("replayCapture") {
+    group = "application"
+    description = "Replays a signaling capture against a running server, see CaptureReplay"
+    classpath = sourceSets["main"].runtimeClasspath
+    mainClass = "com.aircloud.server.capture.CaptureReplay"
+    args = (findProperty("replayArgs") as String? ?: "").split(" ").filter { it.isNotBlank() }
+}
+
+tasks.register<JavaExec>("benchmark") {
+    group = "verification"
+    description = "Runs a *Benchmark main of the test sources, e.g. -Pbenchmark=com.aircloud.server.socket.template.ResponseTemplatesBenchmark"
+    classpath = sourceSets["test"].runtimeClasspath
+    mainClass = findProperty("benchmark") as String? ?: ""
+    jvmArgs("-Xms1g", "-Xmx1g")
+}
@@ -0,0 +1,189 @@
+package com.aircloud.server.capture;
+
+import com.aircloud.server.socket.DiscoveryMode;
+import com.aircloud.server.socket.dto.request.RequestType;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+
+/**
+ * One entry of a signaling capture.
+ * <p>
+ * A capture starts with {@link #MAGIC}, {@link #VERSION} and the wall clock
+ * time of its first record. Every record is a kind code followed by varints:
+ * microseconds since the previous record, the anonymized session number and,
+ * depending on the kind, the network group, the request type, the target
+ * session, the discovery mode and the payload size. Request types and
+ * discovery modes are stored by name, so adding or reordering constants does
+ * not change the meaning of old captures. Sessions and network groups are
+ * numbered in order of appearance, no IDs, names, IPs or SDPs are stored.
+ *
+ * @param at            microseconds since the start of the capture
+ * @param session       anonymized session number
+ * @param networkGroup  anonymized IP address, OPEN only
+ * @param requestType   request type, REQUEST only
+ * @param target        session the request is addressed to, or -1
+ * @param discoveryMode discovery mode sent along with the request, or null
+ * @param size          size of the opaque payload or request data in chars
+ */
+public record CaptureRecord(
+        Kind kind,
+        long at,
+        int session,
+        int networkGroup,
+        RequestType requestType,
+        int target,
+        DiscoveryMode discoveryMode,
+        int size
+) {
+
+    public static final int MAGIC = 0x41434150;
+
+    public static final short VERSION = 1;
+
+    public enum Kind {
+
+        OPEN(0),
+        CLOSE(1),
+        PONG(2),
+        REQUEST(3);
+
+        /**
+         * Code of the kind in a capture, never change these.
+         */
+        private final int code;
+
+        Kind(int code) {
+            this.code = code;
+        }
+
+        static Kind of(final int code) throws IOException {
+            for (Kind kind : values()) {
+                if (kind.code == code) {
+                    return kind;
+                }
+            }
+
+            throw new IOException("Unknown capture record kind " + code);
+        }
+
+    }
+
+    /**
+     * Check the header of a capture, captures of another format version are
+     * rejected.
+     */
+    static void readHeader(final DataInputStream in) throws IOException {
+        if (in.readInt() != CaptureRecord.MAGIC) {
+            throw new IOException("Not a signaling capture");
+        }
+
+        final short version = in.readShort();
+
+        if (version != VERSION) {
+            throw new IOException("Unsupported signaling capture version " + version);
+        }
+    }
+
+    void write(
+            final DataOutputStream out,
+            final long previousAt
+    ) throws IOException {
+        out.writeByte(kind.code);
+        writeVarLong(out, at - previousAt);
+        writeVarLong(out, session);
+
+        switch (kind) {
+            case OPEN -> writeVarLong(out, networkGroup);
+            case REQUEST -> {
+                out.writeUTF(requestType.name());
+                writeVarLong(out, target + 1);
+                out.writeUTF(discoveryMode != null ? discoveryMode.name() : "");
+                writeVarLong(out, size);
+            }
+            default -> {
+            }
+        }
+    }
+
+    /**
+     * @return the next record, null at the end of the capture. Request types
+     * and discovery modes this server does not know are read as null.
+     */
+    static CaptureRecord read(
+            final DataInputStream in,
+            final long previousAt
+    ) throws IOException {
+        final int code = in.read();
+
+        if (code < 0) {
+            return null;
+        }
+
+        final Kind kind = Kind.of(code);
+        final long at = previousAt + readVarLong(in);
+        final int session = (int) readVarLong(in);
+
+        return switch (kind) {
+            case OPEN -> new CaptureRecord(kind, at, session, (int) readVarLong(in), null, -1, null, 0);
+            case REQUEST -> {
+                final String requestType = in.readUTF();
+                final int target = (int) readVarLong(in) - 1;
+                final String mode = in.readUTF();
+                final int size = (int) readVarLong(in);
+                yield new CaptureRecord(kind, at, session, -1, constant(RequestType.class, requestType), target, constant(DiscoveryMode.class, mode), size);
+            }
+            default -> new CaptureRecord(kind, at, session, -1, null, -1, null, 0);
+        };
+    }
+
+    private static <E extends Enum<E>> E constant(
+            final Class<E> type,
+            final String name
+    ) {
+        if (name == null || name.isEmpty()) {
+            return null;
+        }
+
+        try {
+            return Enum.valueOf(type, name);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private static void writeVarLong(
+            final DataOutputStream out,
+            long value
+    ) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+
+        out.writeByte((int) value);
+    }
+
+    private static long readVarLong(final DataInputStream in) throws IOException {
+        long value = 0;
+
+        for (int shift = 0; shift < 64; shift += 7) {
+            final int b = in.read();
+
+            if (b < 0) {
+                throw new EOFException("Truncated capture record");
+            }
+
+            value |= (long) (b & 0x7F) << shift;
+
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+
+        throw new IOException("Malformed varint in capture");
+    }
+
+}
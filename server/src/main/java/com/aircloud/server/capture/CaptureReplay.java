@@ -0,0 +1,264 @@
+package com.aircloud.server.capture;
+
+import com.aircloud.server.socket.DiscoveryMode;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketHttpHeaders;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.client.standard.StandardWebSocketClient;
+import org.springframework.web.socket.handler.TextWebSocketHandler;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Feeds a capture recorded by {@link SignalCapture} into a running server.
+ * <p>
+ * Every captured session is opened as a real WebSocket client, network groups
+ * become distinct {@code x-forwarded-for} addresses and requests are sent with
+ * placeholder names and SDPs of the captured size. Requests addressed to
+ * another session use the peer ID the server assigned to that session during
+ * the replay.
+ * <p>
+ * Usage: {@code ./gradlew replayCapture -PreplayArgs="<capture> [ws-url] [speed]"},
+ * where speed 1 replays in real time, 10 ten times faster and 0 as fast as
+ * possible.
+ */
+@Log4j2
+public class CaptureReplay {
+
+    private static final String USER_AGENT = "Mozilla/5.0 (X11; Linux x86_64) AirCloudReplay/1.0";
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final StandardWebSocketClient client = new StandardWebSocketClient();
+    private final Map<Integer, ReplaySession> sessions = new ConcurrentHashMap<>();
+
+    private final URI uri;
+    private final double speed;
+
+    public CaptureReplay(URI uri, double speed) {
+        this.uri = uri;
+        this.speed = speed;
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.err.println("Usage: CaptureReplay <capture> [ws-url] [speed]");
+            System.exit(1);
+        }
+
+        final URI uri = URI.create(args.length > 1 ? args[1] : "ws://localhost:8080/ws");
+        final double speed = args.length > 2 ? Double.parseDouble(args[2]) : 1;
+
+        new CaptureReplay(uri, speed).replay(Path.of(args[0]));
+    }
+
+    public void replay(final Path capture) throws Exception {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(capture)))) {
+            CaptureRecord.readHeader(in);
+            final long capturedAt = in.readLong();
+            final long startedAt = System.nanoTime();
+            long previousAt = 0;
+            long replayed = 0;
+            CaptureRecord record;
+
+            log.info("Replaying capture from {} against {} at {}x", capturedAt, uri, speed);
+
+            while ((record = CaptureRecord.read(in, previousAt)) != null) {
+                previousAt = record.at();
+                awaitReplayTime(startedAt, record.at());
+
+                try {
+                    apply(record);
+                    replayed++;
+                } catch (Exception e) {
+                    log.warn("Failed to replay {} of session {}: {}", record.kind(), record.session(), e.getMessage());
+                }
+            }
+
+            log.info("Replayed {} record(s) in {} ms", replayed, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAt));
+        } finally {
+            for (ReplaySession session : sessions.values()) {
+                session.close();
+            }
+        }
+    }
+
+    private void awaitReplayTime(
+            final long startedAt,
+            final long at
+    ) throws InterruptedException {
+        if (speed <= 0) {
+            return;
+        }
+
+        final long due = startedAt + (long) (TimeUnit.MICROSECONDS.toNanos(at) / speed);
+        final long wait = due - System.nanoTime();
+
+        if (wait > 0) {
+            TimeUnit.NANOSECONDS.sleep(wait);
+        }
+    }
+
+    private void apply(final CaptureRecord record) throws Exception {
+        switch (record.kind()) {
+            case OPEN -> sessions.put(record.session(), open(record));
+            case CLOSE -> {
+                final ReplaySession session = sessions.remove(record.session());
+
+                if (session != null) {
+                    session.close();
+                }
+            }
+            case REQUEST -> {
+                final ReplaySession session = sessions.get(record.session());
+
+                if (session != null && record.requestType() != null) {
+                    final String frame = buildRequest(record);
+
+                    if (frame != null) {
+                        session.send(frame);
+                    }
+                }
+            }
+            case PONG -> {
+                // Pongs are sent by the WebSocket client itself when the server pings
+            }
+        }
+    }
+
+    private ReplaySession open(final CaptureRecord record) throws Exception {
+        final int group = record.networkGroup();
+        final WebSocketHttpHeaders headers = new WebSocketHttpHeaders();
+        headers.add("user-agent", USER_AGENT);
+        headers.add("x-forwarded-for", "10." + ((group >> 16) & 0xFF) + "." + ((group >> 8) & 0xFF) + "." + (group & 0xFF));
+
+        final ReplaySession session = new ReplaySession(record.session());
+        session.session = client.execute(session, headers, uri).get(10, TimeUnit.SECONDS);
+        return session;
+    }
+
+    private String buildRequest(final CaptureRecord record) {
+        final ReplaySession target = record.target() >= 0 ? sessions.get(record.target()) : null;
+        final ObjectNode request = mapper.createObjectNode();
+        final ObjectNode data = request.putObject("data");
+
+        request.put("type", record.requestType().name());
+
+        switch (record.requestType()) {
+            case CONNECT, CHANGE_SETTINGS -> {
+                data.put("name", "replay-" + record.session());
+                data.putNull("authToken");
+                data.put("discoveryMode", modeOf(record).name());
+            }
+            case PEER_CONNECT -> {
+                if (target == null || target.connectionId == null) {
+                    return null;
+                }
+
+                data.put("connectionId", target.connectionId);
+            }
+            case PEER_RECONNECT, END_OF_ICE_CANDIDATES -> {
+                if (target == null || target.peerId == null) {
+                    return null;
+                }
+
+                data.put("peerId", target.peerId.toString());
+            }
+            case OFFER, ANSWER -> {
+                if (target == null || target.peerId == null) {
+                    return null;
+                }
+
+                final String field = record.requestType().name().toLowerCase();
+                data.put("peerId", target.peerId.toString());
+                data.put("discoveryMode", modeOf(record).name());
+                data.putObject(field)
+                        .put("type", field)
+                        .put("sdp", "v".repeat(Math.max(0, record.size() - 24)));
+            }
+            case ICE_CANDIDATE -> {
+                if (target == null || target.peerId == null) {
+                    return null;
+                }
+
+                data.put("peerId", target.peerId.toString());
+                data.putObject("candidate")
+                        .put("candidate", "c".repeat(Math.max(0, record.size() - 48)))
+                        .put("sdpMid", "0")
+                        .put("sdpMLineIndex", 0);
+            }
+            default -> {
+                return null;
+            }
+        }
+
+        return request.toString();
+    }
+
+    private static DiscoveryMode modeOf(final CaptureRecord record) {
+        return record.discoveryMode() != null ? record.discoveryMode() : DiscoveryMode.NETWORK;
+    }
+
+    /**
+     * Client side of one captured session, learns the peer ID and connection
+     * ID the server assigns on CONNECT.
+     */
+    private class ReplaySession extends TextWebSocketHandler {
+
+        private final int number;
+
+        private volatile WebSocketSession session;
+
+        private volatile UUID peerId;
+
+        private volatile String connectionId;
+
+        private ReplaySession(int number) {
+            this.number = number;
+        }
+
+        @Override
+        protected void handleTextMessage(
+                final WebSocketSession session,
+                final TextMessage message
+        ) throws Exception {
+            final JsonNode response = mapper.readTree(message.getPayload());
+
+            if ("CONNECT".equals(response.path("type").asText())) {
+                peerId = UUID.fromString(response.get("peerId").asText());
+                connectionId = response.path("connectionId").asText(null);
+                log.debug("Replay session {} connected as peer ID {}", number, peerId);
+            }
+        }
+
+        private void send(final String frame) throws IOException {
+            synchronized (this) {
+                if (session.isOpen()) {
+                    session.sendMessage(new TextMessage(frame));
+                }
+            }
+        }
+
+        private void close() {
+            try {
+                session.close();
+            } catch (IOException e) {
+                log.debug("Replay session {} was already closed", number);
+            }
+        }
+
+    }
+
+}
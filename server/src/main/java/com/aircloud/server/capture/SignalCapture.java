@@ -0,0 +1,321 @@
+package com.aircloud.server.capture;
+
+import com.aircloud.server.socket.DiscoveryMode;
+import com.aircloud.server.socket.Peer;
+import com.aircloud.server.socket.dto.request.BaseRequest;
+import com.aircloud.server.socket.dto.request.PeerConnectRequest;
+import com.aircloud.server.socket.dto.request.RequestType;
+import com.aircloud.server.socket.relay.RelayFrame;
+import com.fasterxml.jackson.databind.JsonNode;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Opt-in recorder of inbound requests and session lifecycle events.
+ * <p>
+ * Handler threads only enqueue events; a single writer thread anonymizes them
+ * and appends {@link CaptureRecord}s to a new file in the capture directory.
+ * When the writer falls behind, events are dropped instead of slowing down
+ * signaling. Captures are fed back into a server with {@link CaptureReplay}.
+ */
+@Log4j2
+@Component
+public class SignalCapture {
+
+    private final static int QUEUE_CAPACITY = 65536;
+
+    @Value("${aircloud.capture.enabled}")
+    private boolean CAPTURE_ENABLED;
+
+    @Value("${aircloud.capture.path}")
+    private String CAPTURE_PATH;
+
+    private final BlockingQueue<Event> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private final LongAdder droppedEvents = new LongAdder();
+
+    private final Map<String, SessionState> sessions = new HashMap<>();
+    private final Map<UUID, Integer> sessionsByPeerId = new HashMap<>();
+    private final Map<String, Integer> sessionsByConnectionId = new HashMap<>();
+    private final Map<String, Integer> networkGroups = new HashMap<>();
+
+    private volatile boolean running;
+    private Thread writer;
+    private DataOutputStream out;
+    private long startNanos;
+    private long previousAt;
+    private int nextSession;
+
+    @PostConstruct
+    public void start() throws IOException {
+        if (!CAPTURE_ENABLED) {
+            return;
+        }
+
+        final Path directory = Path.of(CAPTURE_PATH);
+        Files.createDirectories(directory);
+
+        final long startedAt = System.currentTimeMillis();
+        final Path file = directory.resolve("signaling-" + startedAt + ".acap");
+
+        out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file, StandardOpenOption.CREATE_NEW)));
+        out.writeInt(CaptureRecord.MAGIC);
+        out.writeShort(CaptureRecord.VERSION);
+        out.writeLong(startedAt);
+
+        startNanos = System.nanoTime();
+        running = true;
+
+        writer = new Thread(this::drain, "signal-capture");
+        writer.setDaemon(true);
+        writer.start();
+
+        log.info("Capturing signaling traffic to {}", file);
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        if (!running) {
+            return;
+        }
+
+        running = false;
+        writer.join();
+
+        log.info("Signaling capture stopped, {} event(s) dropped", droppedEvents.sum());
+    }
+
+    public boolean isEnabled() {
+        return running;
+    }
+
+    public long getDroppedEvents() {
+        return droppedEvents.sum();
+    }
+
+    public void opened(final WebSocketSession session) {
+        if (running) {
+            final String ipAddress = (String) session.getAttributes().get("ipAddress");
+            enqueue(new Event(CaptureRecord.Kind.OPEN, System.nanoTime(), session.getId(), ipAddress, null, null, null, null, 0));
+        }
+    }
+
+    public void closed(final WebSocketSession session) {
+        if (running) {
+            enqueue(new Event(CaptureRecord.Kind.CLOSE, System.nanoTime(), session.getId(), null, null, null, null, null, 0));
+        }
+    }
+
+    public void pong(final WebSocketSession session) {
+        if (running) {
+            enqueue(new Event(CaptureRecord.Kind.PONG, System.nanoTime(), session.getId(), null, null, null, null, null, 0));
+        }
+    }
+
+    /**
+     * Remember which session owns a peer ID and connection ID, so requests
+     * addressed to them can be recorded as addressed to that session.
+     */
+    public void identified(
+            final WebSocketSession session,
+            final Peer peer
+    ) {
+        if (running) {
+            enqueue(new Event(null, System.nanoTime(), session.getId(), null, null, peer.getPeerId(), peer.getConnectionId(), null, 0));
+        }
+    }
+
+    public void request(
+            final WebSocketSession session,
+            final RelayFrame relay
+    ) {
+        if (running) {
+            enqueue(new Event(CaptureRecord.Kind.REQUEST, System.nanoTime(), session.getId(), null, relay.getType(), relay.getPeerId(), null, relay.getDiscoveryMode(), relay.getOpaqueLength()));
+        }
+    }
+
+    /**
+     * Record a CONNECT passed as handshake parameters as if the client had
+     * sent it as its first message.
+     */
+    public void request(
+            final WebSocketSession session,
+            final PeerConnectRequest request
+    ) {
+        if (running) {
+            enqueue(new Event(CaptureRecord.Kind.REQUEST, System.nanoTime(), session.getId(), null, RequestType.CONNECT, null, null, request.getDiscoveryMode(), 0));
+        }
+    }
+
+    public void request(
+            final WebSocketSession session,
+            final BaseRequest payload
+    ) {
+        if (!running || payload.getType() == null) {
+            return;
+        }
+
+        final JsonNode data = payload.getData();
+        UUID peerId = null;
+        String connectionId = null;
+        DiscoveryMode discoveryMode = null;
+        int size = 0;
+
+        if (data != null) {
+            try {
+                peerId = data.hasNonNull("peerId") ? UUID.fromString(data.get("peerId").asText()) : null;
+                discoveryMode = data.hasNonNull("discoveryMode") ? DiscoveryMode.valueOf(data.get("discoveryMode").asText()) : null;
+            } catch (IllegalArgumentException e) {
+                log.debug("Capturing request with malformed data", e);
+            }
+
+            connectionId = data.hasNonNull("connectionId") ? data.get("connectionId").asText() : null;
+            size = data.toString().length();
+        }
+
+        enqueue(new Event(CaptureRecord.Kind.REQUEST, System.nanoTime(), session.getId(), null, payload.getType(), peerId, connectionId, discoveryMode, size));
+    }
+
+    private void enqueue(final Event event) {
+        if (!queue.offer(event)) {
+            droppedEvents.increment();
+        }
+    }
+
+    /**
+     * Write queued events until stopped and the queue is empty, then close
+     * the capture, so the file is never closed under a write.
+     */
+    private void drain() {
+        try (DataOutputStream capture = out) {
+            while (running || !queue.isEmpty()) {
+                final Event event = queue.poll(1, TimeUnit.SECONDS);
+
+                if (event == null) {
+                    capture.flush();
+                    continue;
+                }
+
+                write(event);
+
+                if (queue.isEmpty()) {
+                    capture.flush();
+                }
+            }
+
+            capture.flush();
+        } catch (IOException e) {
+            running = false;
+            log.error("Signaling capture failed, capturing stopped", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void write(final Event event) throws IOException {
+        if (event.kind() == null) {
+            final SessionState state = sessions.get(event.sessionId());
+
+            if (state != null) {
+                state.peerId = event.peerId();
+                state.connectionId = event.connectionId();
+                sessionsByPeerId.put(event.peerId(), state.number);
+
+                if (event.connectionId() != null) {
+                    sessionsByConnectionId.put(event.connectionId(), state.number);
+                }
+            }
+
+            return;
+        }
+
+        final SessionState state = event.kind() == CaptureRecord.Kind.OPEN
+                ? sessions.computeIfAbsent(event.sessionId(), id -> new SessionState(nextSession++))
+                : sessions.get(event.sessionId());
+
+        if (state == null) {
+            return;
+        }
+
+        final long at = Math.max(previousAt, TimeUnit.NANOSECONDS.toMicros(event.nanos() - startNanos));
+        final CaptureRecord record = switch (event.kind()) {
+            case OPEN -> {
+                final int networkGroup = networkGroups.computeIfAbsent(String.valueOf(event.ipAddress()), ip -> networkGroups.size());
+                yield new CaptureRecord(event.kind(), at, state.number, networkGroup, null, -1, null, 0);
+            }
+            case REQUEST -> new CaptureRecord(event.kind(), at, state.number, -1, event.requestType(), resolveTarget(event), event.discoveryMode(), event.size());
+            default -> new CaptureRecord(event.kind(), at, state.number, -1, null, -1, null, 0);
+        };
+
+        record.write(out, previousAt);
+        previousAt = at;
+
+        if (event.kind() == CaptureRecord.Kind.CLOSE) {
+            sessions.remove(event.sessionId());
+
+            if (state.peerId != null) {
+                sessionsByPeerId.remove(state.peerId, state.number);
+            }
+
+            if (state.connectionId != null) {
+                sessionsByConnectionId.remove(state.connectionId, state.number);
+            }
+        }
+    }
+
+    private int resolveTarget(final Event event) {
+        if (event.requestType() == RequestType.PEER_CONNECT && event.connectionId() != null) {
+            return sessionsByConnectionId.getOrDefault(event.connectionId(), -1);
+        }
+
+        return event.peerId() != null ? sessionsByPeerId.getOrDefault(event.peerId(), -1) : -1;
+    }
+
+    /**
+     * Raw event as seen by a handler thread, a null kind marks an identification.
+     */
+    private record Event(
+            CaptureRecord.Kind kind,
+            long nanos,
+            String sessionId,
+            String ipAddress,
+            RequestType requestType,
+            UUID peerId,
+            String connectionId,
+            DiscoveryMode discoveryMode,
+            int size
+    ) {
+    }
+
+    private static class SessionState {
+
+        private final int number;
+
+        private UUID peerId;
+
+        private String connectionId;
+
+        private SessionState(int number) {
+            this.number = number;
+        }
+
+    }
+
+}
@@ -0,0 +1,401 @@
+package com.aircloud.server.ice;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Drops ICE candidates that are not worth relaying, before the target is
+ * looked up.
+ * <p>
+ * A candidate is a duplicate when the sender already sent the same
+ * candidate attribute to the same target within {@code dedup-window} seconds.
+ * Candidates are compared by a 64-bit hash of the unescaped value of their
+ * {@code candidate} field, taken in place from the frame, so the streaming
+ * path and the DTO fallback agree however the JSON around it is spelled.
+ * End of candidates markers are never duplicates, and only the last
+ * {@link #REMEMBERED_CANDIDATES} of a route are remembered. Routes are
+ * forgotten when the peers are asked to negotiate again or after a quiet
+ * window, at most {@code max-tracked} are remembered, candidates of further
+ * routes are relayed unfiltered.
+ * <p>
+ * {@code drop-types} lists candidate types the deployment cannot use, as
+ * {@code <type>} or {@code <type>/<transport>}, e.g. {@code host/tcp} when
+ * only TURN over TLS gets through.
+ */
+@Log4j2
+@Component
+public class CandidateFilter {
+
+    private final static int REMEMBERED_CANDIDATES = 32;
+
+    private final static long FNV_OFFSET = 0xcbf29ce484222325L;
+    private final static long FNV_PRIME = 0x100000001b3L;
+
+    private final static String CANDIDATE_PREFIX = "candidate:";
+
+    private final static String CANDIDATE_FIELD = "\"candidate\"";
+
+    @Value("${aircloud.ice.dedup-window}")
+    private int DEDUP_WINDOW;
+
+    @Value("${aircloud.ice.max-tracked}")
+    private int MAX_TRACKED;
+
+    @Value("${aircloud.ice.drop-types}")
+    private String DROP_TYPES;
+
+    private final Map<Route, Seen> routes = new ConcurrentHashMap<>();
+
+    private final LongAdder duplicates = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+
+    private Set<String> dropTypes = Set.of();
+
+    @PostConstruct
+    public void start() {
+        configure(DROP_TYPES);
+
+        if (DEDUP_WINDOW > 0) {
+            scheduler.scheduleWithFixedDelay(() -> expire(System.nanoTime()), DEDUP_WINDOW, DEDUP_WINDOW, TimeUnit.SECONDS);
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        scheduler.shutdownNow();
+    }
+
+    void configure(final String types) {
+        final Set<String> parsed = new HashSet<>();
+
+        if (types != null) {
+            for (String type : types.split(",")) {
+                if (!type.isBlank()) {
+                    parsed.add(type.trim().toLowerCase(Locale.ROOT));
+                }
+            }
+        }
+
+        dropTypes = Set.copyOf(parsed);
+
+        if (!dropTypes.isEmpty()) {
+            log.info("Dropping ICE candidates of type {}", dropTypes);
+        }
+    }
+
+    /**
+     * Decide whether a candidate is relayed.
+     *
+     * @param sender peer who sent the candidate
+     * @param target peer the candidate is for
+     * @param text   text containing the candidate JSON
+     * @param start  index of the first character of the candidate JSON
+     * @param end    index after the last character of the candidate JSON
+     * @return false if the candidate is dropped
+     */
+    public boolean admit(
+            final UUID sender,
+            final UUID target,
+            final String text,
+            final int start,
+            final int end
+    ) {
+        if (!dropTypes.isEmpty() && isDroppedType(text, start, end)) {
+            dropped.increment();
+            return false;
+        }
+
+        if (DEDUP_WINDOW <= 0 || sender == null || target == null) {
+            return true;
+        }
+
+        final int value = candidateValue(text, start, end);
+
+        if (value >= 0 && value < end && text.charAt(value) == '"') {
+            return true;
+        }
+
+        final Seen seen = routes.computeIfAbsent(new Route(sender, target), route -> routes.size() < MAX_TRACKED ? new Seen() : null);
+
+        if (seen == null) {
+            return true;
+        }
+
+        final long hash = value >= 0 ? hashValue(text, value, end) : hash(text, start, end);
+
+        if (!seen.add(hash, System.nanoTime(), TimeUnit.SECONDS.toNanos(DEDUP_WINDOW))) {
+            duplicates.increment();
+            return false;
+        }
+
+        return true;
+    }
+
+    public boolean admit(
+            final UUID sender,
+            final UUID target,
+            final String candidate
+    ) {
+        return candidate == null || admit(sender, target, candidate, 0, candidate.length());
+    }
+
+    /**
+     * Forget what the two peers sent each other, they start a new negotiation.
+     */
+    public void reset(
+            final UUID peerA,
+            final UUID peerB
+    ) {
+        if (peerA != null && peerB != null) {
+            routes.remove(new Route(peerA, peerB));
+            routes.remove(new Route(peerB, peerA));
+        }
+    }
+
+    void expire(final long now) {
+        final long window = TimeUnit.SECONDS.toNanos(DEDUP_WINDOW);
+        final Iterator<Seen> iterator = routes.values().iterator();
+
+        while (iterator.hasNext()) {
+            if (now - iterator.next().lastAdded() > window) {
+                iterator.remove();
+            }
+        }
+    }
+
+    public long getDuplicates() {
+        return duplicates.sum();
+    }
+
+    public long getDropped() {
+        return dropped.sum();
+    }
+
+    public int getTrackedRoutes() {
+        return routes.size();
+    }
+
+    /**
+     * Read the transport and the type of a candidate attribute such as
+     * {@code candidate:842163049 1 udp 1677729535 198.51.100.4 54321 typ srflx}.
+     * Candidates that can't be read are kept.
+     */
+    private boolean isDroppedType(
+            final String text,
+            final int start,
+            final int end
+    ) {
+        final int line = text.indexOf(CANDIDATE_PREFIX, start);
+
+        if (line < 0 || line >= end) {
+            return false;
+        }
+
+        String transport = null;
+        int field = 0;
+        int fieldStart = line;
+
+        for (int i = line; i <= end; i++) {
+            final char c = i < end ? text.charAt(i) : '"';
+
+            if (c != ' ' && c != '"') {
+                continue;
+            }
+
+            if (field == 2) {
+                transport = text.substring(fieldStart, i).toLowerCase(Locale.ROOT);
+            } else if (field == 7 && transport != null) {
+                final String type = text.substring(fieldStart, i).toLowerCase(Locale.ROOT);
+                return dropTypes.contains(type) || dropTypes.contains(type + "/" + transport);
+            }
+
+            if (c == '"') {
+                return false;
+            }
+
+            field++;
+            fieldStart = i + 1;
+        }
+
+        return false;
+    }
+
+    /**
+     * Find the value of the {@code candidate} field of a candidate JSON.
+     *
+     * @return index after the opening quote of the value, -1 if the candidate
+     * has no string {@code candidate} field
+     */
+    private static int candidateValue(
+            final String text,
+            final int start,
+            final int end
+    ) {
+        final int field = text.indexOf(CANDIDATE_FIELD, start);
+
+        if (field < 0 || field >= end) {
+            return -1;
+        }
+
+        int i = skipWhitespace(text, field + CANDIDATE_FIELD.length(), end);
+
+        if (i >= end || text.charAt(i) != ':') {
+            return -1;
+        }
+
+        i = skipWhitespace(text, i + 1, end);
+        return i < end && text.charAt(i) == '"' ? i + 1 : -1;
+    }
+
+    private static int skipWhitespace(
+            final String text,
+            int index,
+            final int end
+    ) {
+        while (index < end && Character.isWhitespace(text.charAt(index))) {
+            index++;
+        }
+
+        return index;
+    }
+
+    /**
+     * Hash a JSON string value as its unescaped characters, so that
+     * {@code "a\/b"} and {@code "a/b"} hash alike.
+     *
+     * @param start index after the opening quote
+     */
+    static long hashValue(
+            final String text,
+            final int start,
+            final int end
+    ) {
+        long hash = FNV_OFFSET;
+
+        for (int i = start; i < end; i++) {
+            char c = text.charAt(i);
+
+            if (c == '"') {
+                break;
+            }
+
+            if (c == '\\' && i + 1 < end) {
+                c = text.charAt(++i);
+
+                if (c == 'u' && i + 4 < end && isHex(text, i + 1, i + 5)) {
+                    c = (char) Integer.parseInt(text, i + 1, i + 5, 16);
+                    i += 4;
+                } else {
+                    c = switch (c) {
+                        case 'b' -> '\b';
+                        case 'f' -> '\f';
+                        case 'n' -> '\n';
+                        case 'r' -> '\r';
+                        case 't' -> '\t';
+                        default -> c;
+                    };
+                }
+            }
+
+            hash = (hash ^ c) * FNV_PRIME;
+        }
+
+        return hash;
+    }
+
+    private static boolean isHex(
+            final String text,
+            final int start,
+            final int end
+    ) {
+        for (int i = start; i < end; i++) {
+            if (Character.digit(text.charAt(i), 16) < 0) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    static long hash(
+            final String text,
+            final int start,
+            final int end
+    ) {
+        long hash = FNV_OFFSET;
+
+        for (int i = start; i < end; i++) {
+            hash = (hash ^ text.charAt(i)) * FNV_PRIME;
+        }
+
+        return hash;
+    }
+
+    /**
+     * Candidates sent in one direction. The sender of a route is its only
+     * writer, so the lock of {@link Seen} is uncontended.
+     */
+    private record Route(UUID sender, UUID target) {
+    }
+
+    /**
+     * Ring of the last candidates of a route and when they were sent.
+     */
+    private static class Seen {
+
+        private final long[] hashes = new long[REMEMBERED_CANDIDATES];
+
+        private final long[] addedAt = new long[REMEMBERED_CANDIDATES];
+
+        private int size;
+
+        private int next;
+
+        private volatile long lastAdded;
+
+        /**
+         * @return false if the candidate was already sent within the window
+         */
+        synchronized boolean add(
+                final long hash,
+                final long now,
+                final long window
+        ) {
+            for (int i = 0; i < size; i++) {
+                if (hashes[i] == hash && now - addedAt[i] <= window) {
+                    return false;
+                }
+            }
+
+            hashes[next] = hash;
+            addedAt[next] = now;
+            next = (next + 1) % REMEMBERED_CANDIDATES;
+            size = Math.min(size + 1, REMEMBERED_CANDIDATES);
+            lastAdded = now;
+            return true;
+        }
+
+        long lastAdded() {
+            return lastAdded;
+        }
+
+    }
+
+}
@@ -0,0 +1,19 @@
+package com.aircloud.server.jfr;
+
+import jdk.jfr.*;
+
+@Name("aircloud.HeartbeatSweep")
+@Label("Heartbeat Sweep")
+@Category({"AirCloud", "Heartbeat"})
+@Description("Pinging every peer and evicting idle or broken sessions")
+@StackTrace(false)
+@Threshold("0 ms")
+public class HeartbeatSweepEvent extends Event {
+
+    @Label("Peers")
+    public int peers;
+
+    @Label("Evicted")
+    public int evicted;
+
+}
@@ -0,0 +1,12 @@
+package com.aircloud.server.jfr;
+
+import jdk.jfr.*;
+
+@Name("aircloud.JwtIssue")
+@Label("JWT Issue")
+@Category({"AirCloud", "Security"})
+@Description("Signing an auth token")
+@StackTrace(false)
+@Threshold("1 ms")
+public class JwtIssueEvent extends Event {
+}
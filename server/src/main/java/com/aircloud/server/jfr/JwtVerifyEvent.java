@@ -0,0 +1,16 @@
+package com.aircloud.server.jfr;
+
+import jdk.jfr.*;
+
+@Name("aircloud.JwtVerify")
+@Label("JWT Verify")
+@Category({"AirCloud", "Security"})
+@Description("Verifying an auth token presented by a peer")
+@StackTrace(false)
+@Threshold("1 ms")
+public class JwtVerifyEvent extends Event {
+
+    @Label("Valid")
+    public boolean valid;
+
+}
@@ -0,0 +1,26 @@
+package com.aircloud.server.jfr;
+
+import jdk.jfr.*;
+
+@Name("aircloud.PeerConnect")
+@Label("Peer Connect")
+@Category({"AirCloud", "Signaling"})
+@Description("A peer was identified and announced to its network")
+@StackTrace(false)
+public class PeerConnectEvent extends Event {
+
+    @Label("Peer ID")
+    public String peerId;
+
+    @Label("Discovery Mode")
+    public String discoveryMode;
+
+    @Label("Restored")
+    @Description("The peer kept its identity by presenting a valid auth token")
+    public boolean restored;
+
+    @Label("Handshake")
+    @Description("The CONNECT request came with the WebSocket upgrade")
+    public boolean handshake;
+
+}
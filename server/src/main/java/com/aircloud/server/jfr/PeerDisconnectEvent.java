@@ -0,0 +1,23 @@
+package com.aircloud.server.jfr;
+
+import jdk.jfr.*;
+
+@Name("aircloud.PeerDisconnect")
+@Label("Peer Disconnect")
+@Category({"AirCloud", "Signaling"})
+@Description("A peer left the registry")
+@StackTrace(false)
+public class PeerDisconnectEvent extends Event {
+
+    public final static String CLOSED = "closed";
+    public final static String EVICTED = "evicted";
+    public final static String TAKEN_OVER = "taken-over";
+
+    @Label("Peer ID")
+    public String peerId;
+
+    @Label("Reason")
+    @Description("closed by the client, evicted by the heartbeat or taken over by a newer session")
+    public String reason;
+
+}
@@ -0,0 +1,35 @@
+package com.aircloud.server.jfr;
+
+import jdk.jfr.*;
+
+/**
+ * Disabled unless the recording asks for it, one is emitted per relayed
+ * message.
+ */
+@Name("aircloud.Relay")
+@Label("Relay")
+@Category({"AirCloud", "Signaling"})
+@Description("An OFFER, ANSWER or ICE_CANDIDATE forwarded to another peer, the duration covers encoding and sending")
+@StackTrace(false)
+@Enabled(false)
+@Threshold("1 ms")
+public class RelayEvent extends Event {
+
+    @Label("Type")
+    public String type;
+
+    @Label("Size")
+    @Description("Length of the relayed SDP or candidate")
+    @DataAmount(DataAmount.BYTES)
+    public int size;
+
+    @Label("Queue Time")
+    @Description("Time from receiving the frame until relaying started")
+    @Timespan(Timespan.NANOSECONDS)
+    public long queueTime;
+
+    @Label("Delivered")
+    @Description("Whether the target peer was found")
+    public boolean delivered;
+
+}
@@ -0,0 +1,17 @@
+package com.aircloud.server.jfr;
+
+import jdk.jfr.*;
+
+@Name("aircloud.TurnCredential")
+@Label("TURN Credential")
+@Category({"AirCloud", "Security"})
+@Description("Generating ephemeral TURN credentials")
+@StackTrace(false)
+@Threshold("1 ms")
+public class TurnCredentialEvent extends Event {
+
+    @Label("TTL")
+    @Timespan(Timespan.SECONDS)
+    public long ttl;
+
+}
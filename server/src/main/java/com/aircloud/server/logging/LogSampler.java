@@ -0,0 +1,126 @@
+package com.aircloud.server.logging;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Decides which per-message events are logged in detail.
+ * <p>
+ * Every event is counted, but only a configured share of them is logged
+ * line by line: 1 logs all of them, 0 none. Every {@code summary-period}
+ * seconds one line sums up what happened, so a heartbeat over 100k peers
+ * costs one log line instead of 100k. Warnings and errors are never sampled.
+ */
+@Log4j2
+@Component
+public class LogSampler {
+
+    public enum Event {
+
+        PONG("pongs"),
+        CONNECT("connects"),
+        DISCONNECT("disconnects"),
+        DISCOVERY("discoveries");
+
+        private final String label;
+
+        Event(String label) {
+            this.label = label;
+        }
+
+    }
+
+    @Value("${aircloud.logging.sample.pong}")
+    private double PONG_RATE;
+
+    @Value("${aircloud.logging.sample.connect}")
+    private double CONNECT_RATE;
+
+    @Value("${aircloud.logging.sample.disconnect}")
+    private double DISCONNECT_RATE;
+
+    @Value("${aircloud.logging.sample.discovery}")
+    private double DISCOVERY_RATE;
+
+    @Value("${aircloud.logging.summary-period}")
+    private int SUMMARY_PERIOD;
+
+    private final Map<Event, LongAdder> counts = new EnumMap<>(Event.class);
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+
+    public LogSampler() {
+        for (Event event : Event.values()) {
+            counts.put(event, new LongAdder());
+        }
+    }
+
+    @PostConstruct
+    public void start() {
+        if (SUMMARY_PERIOD > 0) {
+            scheduler.scheduleAtFixedRate(() -> {
+                final String summary = summarize();
+
+                if (summary != null) {
+                    log.info(summary);
+                }
+            }, SUMMARY_PERIOD, SUMMARY_PERIOD, TimeUnit.SECONDS);
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        scheduler.shutdownNow();
+    }
+
+    /**
+     * Count the event.
+     *
+     * @return whether the event should be logged in detail
+     */
+    public boolean sample(final Event event) {
+        counts.get(event).increment();
+
+        final double rate = rateOf(event);
+        return rate >= 1 || (rate > 0 && ThreadLocalRandom.current().nextDouble() < rate);
+    }
+
+    /**
+     * @return the events counted since the last summary, e.g.
+     * {@code Last 60 s: 118345 pongs, 42 connects, 40 disconnects, 612 discoveries},
+     * null if nothing happened
+     */
+    String summarize() {
+        final StringBuilder sb = new StringBuilder("Last ").append(SUMMARY_PERIOD).append(" s:");
+        boolean any = false;
+
+        for (Event event : Event.values()) {
+            final long count = counts.get(event).sumThenReset();
+            any |= count > 0;
+            sb.append(event.ordinal() == 0 ? " " : ", ").append(count).append(' ').append(event.label);
+        }
+
+        return any ? sb.toString() : null;
+    }
+
+    private double rateOf(final Event event) {
+        return switch (event) {
+            case PONG -> PONG_RATE;
+            case CONNECT -> CONNECT_RATE;
+            case DISCONNECT -> DISCONNECT_RATE;
+            case DISCOVERY -> DISCOVERY_RATE;
+        };
+    }
+
+}
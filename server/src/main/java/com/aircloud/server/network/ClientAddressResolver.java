@@ -0,0 +1,166 @@
+package com.aircloud.server.network;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.servlet.http.HttpServletRequest;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+
+/**
+ * Finds the address of the client behind a WebSocket upgrade, which keys its
+ * network group and its per-IP admission limit.
+ * <p>
+ * The client IP header is only believed on requests from a trusted proxy.
+ * Its entries are read from the right, skipping the hops added by trusted
+ * proxies, so a client cannot pick its address by sending the header itself.
+ * Requests from anyone else are keyed on the connecting address. Behind a
+ * proxy that is not trusted, every client shares the proxy's address, ends up
+ * in one network group and in one admission limit, so a client IP header
+ * without trusted proxies is warned about at startup.
+ */
+@Log4j2
+@Component
+public class ClientAddressResolver {
+
+    /**
+     * Header carrying the client address, e.g. {@code x-forwarded-for} or
+     * {@code cf-connecting-ip}, empty to only use the connecting address.
+     */
+    @Value("${aircloud.network.client-ip-header}")
+    private String CLIENT_IP_HEADER;
+
+    /**
+     * Comma separated CIDR ranges of the proxies allowed to set the header.
+     */
+    @Value("${aircloud.network.trusted-proxies}")
+    private String TRUSTED_PROXIES;
+
+    private String header;
+
+    private List<Range> trustedProxies = List.of();
+
+    private record Range(NetworkAddress network, int length) {
+
+        boolean contains(final NetworkAddress address) {
+            return network.equals(address.mask(length));
+        }
+
+    }
+
+    @PostConstruct
+    public void start() {
+        configure(CLIENT_IP_HEADER, TRUSTED_PROXIES);
+
+        if (header != null && trustedProxies.isEmpty()) {
+            log.warn("Client IP header {} is set but no trusted proxy is, it is ignored and every client behind a proxy"
+                    + " shares the proxy's address, network group and connection limit. Set aircloud.network.trusted-proxies"
+                    + " (TRUSTED_PROXIES) to the ranges of the proxy", header);
+        }
+    }
+
+    void configure(
+            final String header,
+            final String proxies
+    ) {
+        final List<Range> parsed = new ArrayList<>();
+
+        if (proxies != null) {
+            for (String proxy : proxies.split(",")) {
+                if (!proxy.isBlank()) {
+                    parsed.add(parseRange(proxy.trim()));
+                }
+            }
+        }
+
+        this.header = header == null || header.isBlank() ? null : header.trim();
+        this.trustedProxies = List.copyOf(parsed);
+
+        if (this.header != null && !trustedProxies.isEmpty()) {
+            log.info("Reading client addresses from {} sent by {} trusted proxy range(s)", this.header, trustedProxies.size());
+        }
+    }
+
+    /**
+     * @return the address of the client, the connecting address unless a
+     * trusted proxy forwarded the request
+     */
+    public String resolve(final HttpServletRequest request) {
+        final String remoteAddress = request.getRemoteAddr();
+
+        if (header == null || !isTrusted(NetworkAddress.parse(remoteAddress))) {
+            return remoteAddress;
+        }
+
+        final Enumeration<String> values = request.getHeaders(header);
+        final String forwarded = values != null ? String.join(",", Collections.list(values)) : "";
+
+        if (forwarded.isBlank()) {
+            return remoteAddress;
+        }
+
+        final String[] hops = forwarded.split(",");
+        String client = remoteAddress;
+
+        for (int i = hops.length - 1; i >= 0; i--) {
+            final String hop = hops[i].trim();
+            final NetworkAddress address = NetworkAddress.parse(hop);
+
+            if (address == null) {
+                break;
+            }
+
+            client = hop;
+
+            if (!isTrusted(address)) {
+                break;
+            }
+        }
+
+        return client;
+    }
+
+    private boolean isTrusted(final NetworkAddress address) {
+        if (address == null) {
+            return false;
+        }
+
+        for (Range range : trustedProxies) {
+            if (range.contains(address)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private static Range parseRange(final String cidr) {
+        final int slash = cidr.indexOf('/');
+        final NetworkAddress address = NetworkAddress.parse(slash >= 0 ? cidr.substring(0, slash) : cidr);
+
+        if (address == null) {
+            throw new IllegalArgumentException("Trusted proxy " + cidr + " is not an IP address or CIDR range");
+        }
+
+        final int bits = address.ipv4() ? 32 : 128;
+        final int length;
+
+        try {
+            length = slash >= 0 ? Integer.parseInt(cidr.substring(slash + 1)) : bits;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Trusted proxy " + cidr + " has no valid prefix length");
+        }
+
+        if (length < 0 || length > bits) {
+            throw new IllegalArgumentException("Trusted proxy " + cidr + " has no valid prefix length");
+        }
+
+        final int prefix = address.ipv4() ? NetworkAddress.IPV4_OFFSET + length : length;
+        return new Range(address.mask(prefix), prefix);
+    }
+
+}
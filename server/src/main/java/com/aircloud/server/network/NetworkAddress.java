@@ -0,0 +1,140 @@
+package com.aircloud.server.network;
+
+import java.net.Inet6Address;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+
+/**
+ * An IP address packed into 128 bits. IPv4 addresses are stored IPv4-mapped
+ * ({@code ::ffff:a.b.c.d}), so a client seen as {@code 203.0.113.7} and as
+ * {@code ::ffff:203.0.113.7} has the same address.
+ *
+ * @param high first 64 bits
+ * @param low  last 64 bits
+ * @param ipv4 whether this is an IPv4 address
+ */
+public record NetworkAddress(long high, long low, boolean ipv4) {
+
+    private final static long IPV4_MAPPED = 0x0000_ffff_0000_0000L;
+
+    /**
+     * Bits of the IPv4-mapped prefix in front of an IPv4 address.
+     */
+    final static int IPV4_OFFSET = 96;
+
+    /**
+     * Parse an address literal as it comes from a header: the first entry of
+     * a proxy chain is used, brackets, an IPv4 port and an IPv6 zone are
+     * dropped. Host names are never resolved.
+     *
+     * @return the address, or null if the value is not an IP address literal
+     */
+    public static NetworkAddress parse(final String value) {
+        if (value == null) {
+            return null;
+        }
+
+        String literal = value;
+        final int comma = literal.indexOf(',');
+
+        if (comma >= 0) {
+            literal = literal.substring(0, comma);
+        }
+
+        literal = literal.trim();
+
+        if (literal.startsWith("[")) {
+            final int end = literal.indexOf(']');
+
+            if (end < 0) {
+                return null;
+            }
+
+            literal = literal.substring(1, end);
+        } else if (literal.indexOf('.') >= 0 && literal.indexOf(':') >= 0 && literal.indexOf(':') == literal.lastIndexOf(':')) {
+            literal = literal.substring(0, literal.indexOf(':'));
+        }
+
+        final int zone = literal.indexOf('%');
+
+        if (zone >= 0) {
+            literal = literal.substring(0, zone);
+        }
+
+        final byte[] bytes;
+
+        try {
+            bytes = InetAddress.ofLiteral(literal).getAddress();
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+
+        if (bytes.length == 4) {
+            return new NetworkAddress(0, IPV4_MAPPED | (toLong(bytes, 0, 4)), true);
+        }
+
+        final long high = toLong(bytes, 0, 8);
+        final long low = toLong(bytes, 8, 8);
+
+        return new NetworkAddress(high, low, high == 0 && (low & 0xffff_ffff_0000_0000L) == IPV4_MAPPED);
+    }
+
+    /**
+     * @param index 0 for the most significant bit
+     */
+    public boolean bit(final int index) {
+        return index < 64
+                ? (high >>> (63 - index) & 1) != 0
+                : (low >>> (127 - index) & 1) != 0;
+    }
+
+    /**
+     * @param length prefix length counted over all 128 bits
+     * @return the address with every bit after the prefix cleared
+     */
+    public NetworkAddress mask(final int length) {
+        final long highMask = length >= 64 ? -1L : length == 0 ? 0 : -1L << (64 - length);
+        final long lowMask = length <= 64 ? 0 : length >= 128 ? -1L : -1L << (128 - length);
+
+        return new NetworkAddress(high & highMask, low & lowMask, ipv4);
+    }
+
+    /**
+     * @param length prefix length counted over all 128 bits
+     * @return the prefix in CIDR notation, e.g. {@code 203.0.113.0/24}
+     */
+    public String format(final int length) {
+        if (ipv4) {
+            return (low >>> 24 & 0xff) + "." + (low >>> 16 & 0xff) + "." + (low >>> 8 & 0xff) + "." + (low & 0xff)
+                    + "/" + (length - IPV4_OFFSET);
+        }
+
+        final byte[] bytes = new byte[16];
+
+        for (int i = 0; i < 8; i++) {
+            bytes[i] = (byte) (high >>> (56 - 8 * i));
+            bytes[8 + i] = (byte) (low >>> (56 - 8 * i));
+        }
+
+        try {
+            return Inet6Address.getByAddress(null, bytes, -1).getHostAddress() + "/" + length;
+        } catch (UnknownHostException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static long toLong(
+            final byte[] bytes,
+            final int offset,
+            final int length
+    ) {
+        long value = 0;
+
+        for (int i = offset; i < offset + length; i++) {
+            value = value << 8 | (bytes[i] & 0xff);
+        }
+
+        return value;
+    }
+
+}
@@ -0,0 +1,44 @@
+package com.aircloud.server.network;
+
+import com.aircloud.server.socket.Peer;
+import lombok.Getter;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Peers whose addresses share a network prefix and discover each other.
+ * Membership changes only through {@link NetworkIndex}, the members can be
+ * read without locking.
+ */
+@Getter
+public class NetworkGroup {
+
+    /**
+     * The prefix in CIDR notation, or the raw address if it could not be parsed.
+     */
+    private final String key;
+
+    private final NetworkAddress prefix;
+
+    private final int length;
+
+    private final Set<Peer> peers = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Members in NETWORK discovery mode, the ones announced to each other.
+     */
+    private final Set<Peer> discoverable = ConcurrentHashMap.newKeySet();
+
+    NetworkGroup(String key, NetworkAddress prefix, int length) {
+        this.key = key;
+        this.prefix = prefix;
+        this.length = length;
+    }
+
+    @Override
+    public String toString() {
+        return key;
+    }
+
+}
@@ -0,0 +1,198 @@
+package com.aircloud.server.network;
+
+import com.aircloud.server.socket.DiscoveryMode;
+import com.aircloud.server.socket.Peer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Assigns peers to network groups by the IPv4 or IPv6 prefix of their
+ * address, so peers behind the same carrier-grade NAT range or sharing an
+ * IPv6 /64 discover each other even though their addresses differ.
+ * <p>
+ * Groups are stored in a binary trie over the 128 address bits, finding the
+ * group of an address walks at most one node per prefix bit and compares no
+ * strings. Addresses that are not IP literals get a group of their own per
+ * distinct value. Branches are removed once their group is empty.
+ */
+@Component
+public class NetworkIndex {
+
+    @Value("${aircloud.network.ipv4-prefix}")
+    private int IPV4_PREFIX;
+
+    @Value("${aircloud.network.ipv6-prefix}")
+    private int IPV6_PREFIX;
+
+    private final Node root = new Node();
+
+    private final Map<String, NetworkGroup> unparsed = new HashMap<>();
+
+    private static class Node {
+
+        private Node zero;
+
+        private Node one;
+
+        private NetworkGroup group;
+
+        Node child(final boolean bit) {
+            return bit ? one : zero;
+        }
+
+        boolean isEmpty() {
+            return zero == null && one == null && group == null;
+        }
+
+    }
+
+    /**
+     * Put the peer into the group of its current IP address.
+     */
+    public synchronized void add(final Peer peer) {
+        final NetworkGroup group = groupOf(peer.getIpAddress());
+        join(group, peer);
+    }
+
+    public synchronized void remove(final Peer peer) {
+        final NetworkGroup group = peer.getNetwork();
+
+        if (group == null) {
+            return;
+        }
+
+        group.getDiscoverable().remove(peer);
+
+        if (group.getPeers().remove(peer) && group.getPeers().isEmpty()) {
+            prune(group);
+        }
+    }
+
+    /**
+     * Make the peer discoverable in its group or hide it, once its group has
+     * been told about its discovery mode. Following the announced mode rather
+     * than the requested one keeps a peer whose change is still debounced
+     * from being offered to, or hidden from, peers joining in the meantime.
+     */
+    public synchronized void discoveryModeAnnounced(final Peer peer) {
+        final NetworkGroup group = peer.getNetwork();
+
+        if (group == null || !group.getPeers().contains(peer)) {
+            return;
+        }
+
+        if (peer.getAnnouncedDiscoveryMode() == DiscoveryMode.NETWORK) {
+            group.getDiscoverable().add(peer);
+        } else {
+            group.getDiscoverable().remove(peer);
+        }
+    }
+
+    /**
+     * Move the peer after its IP address has changed.
+     *
+     * @return whether the peer is in another group now
+     */
+    public synchronized boolean update(final Peer peer) {
+        final NetworkGroup previous = peer.getNetwork();
+        final NetworkGroup current = groupOf(peer.getIpAddress());
+
+        if (current == previous) {
+            return false;
+        }
+
+        remove(peer);
+        join(current, peer);
+        return true;
+    }
+
+    private void join(
+            final NetworkGroup group,
+            final Peer peer
+    ) {
+        group.getPeers().add(peer);
+        peer.setNetwork(group);
+
+        if (peer.getAnnouncedDiscoveryMode() == DiscoveryMode.NETWORK) {
+            group.getDiscoverable().add(peer);
+        }
+    }
+
+    private NetworkGroup groupOf(final String ipAddress) {
+        final NetworkAddress address = NetworkAddress.parse(ipAddress);
+
+        if (address == null) {
+            final String key = String.valueOf(ipAddress);
+            return unparsed.computeIfAbsent(key, k -> new NetworkGroup(k, null, 0));
+        }
+
+        final int length = prefixLength(address);
+        Node node = root;
+
+        for (int i = 0; i < length; i++) {
+            final boolean bit = address.bit(i);
+            Node child = node.child(bit);
+
+            if (child == null) {
+                child = new Node();
+
+                if (bit) {
+                    node.one = child;
+                } else {
+                    node.zero = child;
+                }
+            }
+
+            node = child;
+        }
+
+        if (node.group == null) {
+            final NetworkAddress prefix = address.mask(length);
+            node.group = new NetworkGroup(prefix.format(length), prefix, length);
+        }
+
+        return node.group;
+    }
+
+    private void prune(final NetworkGroup group) {
+        if (group.getPrefix() == null) {
+            unparsed.remove(group.getKey(), group);
+            return;
+        }
+
+        final Node[] path = new Node[group.getLength() + 1];
+        path[0] = root;
+
+        for (int i = 0; i < group.getLength(); i++) {
+            path[i + 1] = path[i].child(group.getPrefix().bit(i));
+
+            if (path[i + 1] == null) {
+                return;
+            }
+        }
+
+        if (path[group.getLength()].group != group) {
+            return;
+        }
+
+        path[group.getLength()].group = null;
+
+        for (int i = group.getLength(); i > 0 && path[i].isEmpty(); i--) {
+            if (group.getPrefix().bit(i - 1)) {
+                path[i - 1].one = null;
+            } else {
+                path[i - 1].zero = null;
+            }
+        }
+    }
+
+    private int prefixLength(final NetworkAddress address) {
+        return address.ipv4()
+                ? NetworkAddress.IPV4_OFFSET + Math.clamp(IPV4_PREFIX, 0, 32)
+                : Math.clamp(IPV6_PREFIX, 0, 128);
+    }
+
+}
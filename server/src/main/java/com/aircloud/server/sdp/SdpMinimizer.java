@@ -0,0 +1,381 @@
+package com.aircloud.server.sdp;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Strips what a data-channel-only session does not need from relayed offers
+ * and answers.
+ * <p>
+ * Every media section other than {@code m=application} is rejected the way
+ * RFC 3264 rejects a stream: its port is set to 0, only its first format,
+ * its connection line and its mid are kept, and its mid is removed from the
+ * BUNDLE group. Sections are never removed, so an answer still has one
+ * m-line per m-line of the offer. Codec, RTP header extension, SSRC and
+ * msid lines of rejected sections go away, the application section is kept
+ * as is. SDPs without an application section are left alone.
+ * <p>
+ * The SDP is rewritten inside its JSON string, lines are split at the
+ * escaped line breaks, so it is never unescaped. An SDP with any other
+ * escape sequence is relayed unchanged.
+ */
+@Component
+public class SdpMinimizer {
+
+    private final static String SDP_FIELD = "\"sdp\":\"";
+
+    private final static String ESCAPED_CRLF = "\\r\\n";
+    private final static String ESCAPED_LF = "\\n";
+
+    private final static String BUNDLE = "a=group:BUNDLE";
+
+    @Value("${aircloud.sdp.minimize}")
+    private boolean ENABLED;
+
+    private final LongAdder bytesIn = new LongAdder();
+    private final LongAdder bytesOut = new LongAdder();
+
+    public boolean isEnabled() {
+        return ENABLED;
+    }
+
+    /**
+     * Minimize the SDP of an offer or answer object such as
+     * {@code {"type":"offer","sdp":"v=0\r\n..."}}.
+     *
+     * @param text  text containing the JSON object
+     * @param start index of the opening brace
+     * @param end   index after the closing brace
+     * @return the rewritten JSON object, null if it is relayed unchanged
+     */
+    public String minimize(
+            final String text,
+            final int start,
+            final int end
+    ) {
+        final int field = text.indexOf(SDP_FIELD, start);
+
+        if (field < 0 || field >= end) {
+            return null;
+        }
+
+        final int valueStart = field + SDP_FIELD.length();
+        final int valueEnd = closingQuote(text, valueStart, end);
+
+        if (valueEnd < 0) {
+            return null;
+        }
+
+        final int crlf = text.indexOf(ESCAPED_CRLF, valueStart);
+        final String separator = crlf >= 0 && crlf < valueEnd ? ESCAPED_CRLF : ESCAPED_LF;
+        final StringBuilder sb = new StringBuilder(end - start);
+
+        sb.append(text, start, valueStart);
+        bytesIn.add(end - start);
+
+        if (!minimizeSdp(text, valueStart, valueEnd, separator, sb)) {
+            bytesOut.add(end - start);
+            return null;
+        }
+
+        sb.append(text, valueEnd, end);
+        bytesOut.add(sb.length());
+        return sb.toString();
+    }
+
+    /**
+     * Minimize an unescaped session description, as carried by a parsed
+     * offer or answer.
+     *
+     * @return minimized session description, null if nothing can be removed
+     */
+    public static String minimizeSdp(final String sdp) {
+        final StringBuilder sb = new StringBuilder(sdp.length());
+        return minimizeSdp(sdp, 0, sdp.length(), sdp.contains("\r\n") ? "\r\n" : "\n", sb) ? sb.toString() : null;
+    }
+
+    public long getBytesIn() {
+        return bytesIn.sum();
+    }
+
+    public long getBytesOut() {
+        return bytesOut.sum();
+    }
+
+    /**
+     * @return index of the quote closing the JSON string, -1 if the string
+     * holds escapes other than line breaks or is not closed
+     */
+    private static int closingQuote(
+            final String text,
+            final int from,
+            final int end
+    ) {
+        for (int i = from; i < end; i++) {
+            final char c = text.charAt(i);
+
+            if (c == '"') {
+                return i;
+            }
+
+            if (c == '\\') {
+                if (i + 1 >= end || (text.charAt(i + 1) != 'r' && text.charAt(i + 1) != 'n')) {
+                    return -1;
+                }
+
+                i++;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * @param text      text containing the session description
+     * @param from      index of its first character
+     * @param to        index after its last character
+     * @param separator line separator of the session description
+     * @param sb        receives the minimized session description
+     * @return false if nothing can be removed, the builder is left in an
+     * undefined state then
+     */
+    private static boolean minimizeSdp(
+            final String text,
+            final int from,
+            final int to,
+            final String separator,
+            final StringBuilder sb
+    ) {
+        final Lines lines = Lines.split(text, from, to, separator);
+        final List<Section> sections = new ArrayList<>();
+        int sessionEnd = lines.count;
+
+        for (int i = 0; i < lines.count; i++) {
+            if (lines.startsWith(i, "m=")) {
+                if (sections.isEmpty()) {
+                    sessionEnd = i;
+                } else {
+                    sections.getLast().end = i;
+                }
+
+                sections.add(new Section(lines, i));
+            }
+        }
+
+        if (!sections.isEmpty()) {
+            sections.getLast().end = lines.count;
+        }
+
+        if (sections.stream().noneMatch(Section::isApplication)) {
+            return false;
+        }
+
+        final int length = sb.length();
+
+        for (int i = 0; i < sessionEnd; i++) {
+            if (lines.startsWith(i, BUNDLE)) {
+                appendBundle(sb, sections, separator);
+            } else if (!lines.startsWith(i, "a=extmap-allow-mixed") && !lines.startsWith(i, "a=msid-semantic")) {
+                lines.append(sb, i, separator);
+            }
+        }
+
+        for (Section section : sections) {
+            section.append(sb, separator);
+        }
+
+        return sb.length() - length < to - from;
+    }
+
+    private static void appendBundle(
+            final StringBuilder sb,
+            final List<Section> sections,
+            final String separator
+    ) {
+        final int length = sb.length();
+        sb.append(BUNDLE);
+
+        for (Section section : sections) {
+            if (section.isApplication() && section.mid >= 0) {
+                sb.append(' ');
+                section.lines.append(sb, section.mid, "a=mid:".length());
+            }
+        }
+
+        if (sb.length() == length + BUNDLE.length()) {
+            sb.setLength(length);
+        } else {
+            sb.append(separator);
+        }
+    }
+
+    /**
+     * Line boundaries within the session description, so lines are compared
+     * and copied in place. A trailing separator adds no empty line.
+     */
+    private static class Lines {
+
+        private final String sdp;
+
+        private int[] starts = new int[64];
+
+        private int[] ends = new int[64];
+
+        private int count;
+
+        private Lines(String sdp) {
+            this.sdp = sdp;
+        }
+
+        static Lines split(
+                final String sdp,
+                final int from,
+                final int to,
+                final String separator
+        ) {
+            final Lines lines = new Lines(sdp);
+            int start = from;
+            int next;
+
+            while ((next = sdp.indexOf(separator, start)) >= 0 && next < to) {
+                lines.add(start, next);
+                start = next + separator.length();
+            }
+
+            if (start < to) {
+                lines.add(start, to);
+            }
+
+            return lines;
+        }
+
+        private void add(
+                final int start,
+                final int end
+        ) {
+            if (count == starts.length) {
+                starts = Arrays.copyOf(starts, count * 2);
+                ends = Arrays.copyOf(ends, count * 2);
+            }
+
+            starts[count] = start;
+            ends[count] = end;
+            count++;
+        }
+
+        boolean startsWith(
+                final int line,
+                final String prefix
+        ) {
+            return ends[line] - starts[line] >= prefix.length() && sdp.startsWith(prefix, starts[line]);
+        }
+
+        void append(
+                final StringBuilder sb,
+                final int line,
+                final String separator
+        ) {
+            sb.append(sdp, starts[line], ends[line]).append(separator);
+        }
+
+        /**
+         * Append the line from {@code offset} on, without separator.
+         */
+        void append(
+                final StringBuilder sb,
+                final int line,
+                final int offset
+        ) {
+            sb.append(sdp, starts[line] + offset, ends[line]);
+        }
+
+        /**
+         * Append {@code m=<media> <port> <proto> <fmt> ...} with port 0 and
+         * only the first format.
+         */
+        void appendRejected(
+                final StringBuilder sb,
+                final int line,
+                final String separator
+        ) {
+            final int start = starts[line];
+            final int end = ends[line];
+            final int port = sdp.indexOf(' ', start);
+            final int proto = port >= 0 && port < end ? sdp.indexOf(' ', port + 1) : -1;
+            final int format = proto >= 0 && proto < end ? sdp.indexOf(' ', proto + 1) : -1;
+
+            if (format < 0 || format >= end) {
+                append(sb, line, separator);
+                return;
+            }
+
+            final int formatEnd = sdp.indexOf(' ', format + 1);
+
+            sb.append(sdp, start, port)
+                    .append(" 0")
+                    .append(sdp, proto, formatEnd >= 0 && formatEnd < end ? formatEnd : end)
+                    .append(separator);
+        }
+
+    }
+
+    private static class Section {
+
+        private final Lines lines;
+
+        private final int start;
+
+        private final boolean application;
+
+        /**
+         * Line of the mid attribute, -1 without one.
+         */
+        private int mid = -1;
+
+        private int end;
+
+        Section(Lines lines, int start) {
+            this.lines = lines;
+            this.start = start;
+            this.application = lines.startsWith(start, "m=application ");
+
+            for (int i = start + 1; i < lines.count && !lines.startsWith(i, "m="); i++) {
+                if (lines.startsWith(i, "a=mid:")) {
+                    this.mid = i;
+                }
+            }
+        }
+
+        boolean isApplication() {
+            return application;
+        }
+
+        void append(
+                final StringBuilder sb,
+                final String separator
+        ) {
+            if (application) {
+                for (int i = start; i < end; i++) {
+                    lines.append(sb, i, separator);
+                }
+
+                return;
+            }
+
+            lines.appendRejected(sb, start, separator);
+
+            for (int i = start + 1; i < end; i++) {
+                if (lines.startsWith(i, "c=") || i == mid) {
+                    lines.append(sb, i, separator);
+                }
+            }
+        }
+
+    }
+
+}
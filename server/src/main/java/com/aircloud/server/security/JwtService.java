@@ -1,5 +1,9 @@
 package com.aircloud.server.security;
 
+import com.aircloud.server.jfr.JwtIssueEvent;
+import com.aircloud.server.jfr.JwtVerifyEvent;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import io.jsonwebtoken.Claims;
 import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.security.Keys;
@@ -7,12 +11,15 @@ import org.springframework.stereotype.Component;
 
 import javax.crypto.SecretKey;
 import java.nio.charset.StandardCharsets;
+import java.util.Base64;
 import java.util.Date;
 import java.util.UUID;
 
 @Component
 public class JwtService {
 
+    public final static long AUTH_TOKEN_TTL = 2 * 60 * 1000;
+
     private static SecretKey getSigningKey(final UUID secretKey) {
         return Keys.hmacShaKeyFor(secretKey.toString().getBytes(StandardCharsets.UTF_8));
     }
@@ -22,10 +29,13 @@ public class JwtService {
             final String connectionId,
             final UUID secretKey
     ) {
+        final JwtIssueEvent event = new JwtIssueEvent();
+        event.begin();
+
         final long now = System.currentTimeMillis();
-        final long ttl = now + 2 * 60 * 1000;
+        final long ttl = now + AUTH_TOKEN_TTL;
 
-        return Jwts.builder()
+        final String token = Jwts.builder()
                 .subject(peerId.toString())
                 .id(UUID.randomUUID().toString())
                 .issuedAt(new Date(now))
@@ -33,20 +43,46 @@ public class JwtService {
                 .signWith(getSigningKey(secretKey))
                 .claim("connectionId", connectionId)
                 .compact();
+
+        event.commit();
+        return token;
     }
 
     public static boolean verifyAuthToken(
             final String token,
             final UUID secretKey
     ) {
+        final JwtVerifyEvent event = new JwtVerifyEvent();
+        event.begin();
+
         try {
             Jwts.parser()
                     .verifyWith(getSigningKey(secretKey))
                     .build()
                     .parseSignedClaims(token);
-            return true;
+            event.valid = true;
+        } catch (Exception e) {
+            event.valid = false;
+        }
+
+        event.commit();
+        return event.valid;
+    }
+
+    /**
+     * Read the peer ID of a token without verifying it. The token is signed
+     * with the private key of the peer it was issued to, the ID only tells
+     * whose key to verify it with.
+     *
+     * @return subject of the token, null if the token is malformed
+     */
+    public static UUID peekPeerId(final String token) {
+        try {
+            final String[] parts = token.split("\\.");
+            final JsonNode claims = new ObjectMapper().readTree(Base64.getUrlDecoder().decode(parts[1]));
+            return UUID.fromString(claims.get("sub").asText());
         } catch (Exception e) {
-            return false;
+            return null;
         }
     }
 
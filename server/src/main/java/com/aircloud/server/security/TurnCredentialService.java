@@ -1,5 +1,6 @@
 package com.aircloud.server.security;
 
+import com.aircloud.server.jfr.TurnCredentialEvent;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
@@ -26,6 +27,9 @@ public class TurnCredentialService {
             return null;
         }
 
+        final TurnCredentialEvent event = new TurnCredentialEvent();
+        event.begin();
+
         final long expiry = (System.currentTimeMillis() / 1000) + ttlSeconds;
         final String username = expiry + ":" + userId;
 
@@ -35,6 +39,11 @@ public class TurnCredentialService {
         final byte[] hash = hmac.doFinal(username.getBytes(StandardCharsets.UTF_8));
         final String credential = Base64.getEncoder().encodeToString(hash);
 
+        if (event.shouldCommit()) {
+            event.ttl = ttlSeconds;
+            event.commit();
+        }
+
         return new EphemeralCredentials(username, credential);
     }
 
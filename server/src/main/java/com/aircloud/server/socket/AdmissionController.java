@@ -0,0 +1,123 @@
+package com.aircloud.server.socket;
+
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Turns WebSocket upgrades away before they cost a session, a user agent
+ * parse and a registry entry. Limits the handshakes in flight across the
+ * server and the open connections per client IP address.
+ */
+@Component
+public class AdmissionController {
+
+    public final static String ADMITTED_ATTRIBUTE = "admitted";
+
+    @Value("${aircloud.admission.max-handshakes}")
+    private int MAX_HANDSHAKES;
+
+    @Value("${aircloud.admission.max-connections-per-ip}")
+    private int MAX_CONNECTIONS_PER_IP;
+
+    @Value("${aircloud.admission.retry-after}")
+    private int RETRY_AFTER;
+
+    private final Map<String, Integer> connectionsPerIp = new ConcurrentHashMap<>();
+
+    private final LongAdder rejectedHandshakes = new LongAdder();
+    private final LongAdder rejectedConnections = new LongAdder();
+
+    private Semaphore handshakes;
+
+    public enum Rejection {
+
+        TOO_MANY_HANDSHAKES(HttpStatus.SERVICE_UNAVAILABLE),
+        TOO_MANY_CONNECTIONS(HttpStatus.TOO_MANY_REQUESTS);
+
+        private final HttpStatus status;
+
+        Rejection(HttpStatus status) {
+            this.status = status;
+        }
+
+        public HttpStatus getStatus() {
+            return status;
+        }
+
+    }
+
+    @PostConstruct
+    public void init() {
+        handshakes = new Semaphore(MAX_HANDSHAKES);
+    }
+
+    /**
+     * Reserve a handshake slot and a connection slot for the IP address.
+     *
+     * @return null if admitted, otherwise the reason of the rejection
+     */
+    public Rejection admit(final String ipAddress) {
+        if (!handshakes.tryAcquire()) {
+            rejectedHandshakes.increment();
+            return Rejection.TOO_MANY_HANDSHAKES;
+        }
+
+        if (ipAddress != null && !reserveConnection(ipAddress)) {
+            handshakes.release();
+            rejectedConnections.increment();
+            return Rejection.TOO_MANY_CONNECTIONS;
+        }
+
+        return null;
+    }
+
+    public void handshakeCompleted() {
+        handshakes.release();
+    }
+
+    /**
+     * Give back the connection slot of a closed or failed connection.
+     */
+    public void connectionClosed(final String ipAddress) {
+        if (ipAddress != null) {
+            connectionsPerIp.computeIfPresent(ipAddress, (ip, count) -> count > 1 ? count - 1 : null);
+        }
+    }
+
+    public int getRetryAfter() {
+        return RETRY_AFTER;
+    }
+
+    public long getRejectedHandshakes() {
+        return rejectedHandshakes.sum();
+    }
+
+    public long getRejectedConnections() {
+        return rejectedConnections.sum();
+    }
+
+    private boolean reserveConnection(final String ipAddress) {
+        final boolean[] reserved = {false};
+
+        connectionsPerIp.compute(ipAddress, (ip, count) -> {
+            final int current = count == null ? 0 : count;
+
+            if (current >= MAX_CONNECTIONS_PER_IP) {
+                return count;
+            }
+
+            reserved[0] = true;
+            return current + 1;
+        });
+
+        return reserved[0];
+    }
+
+}
@@ -1,5 +1,6 @@
 package com.aircloud.server.socket;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import lombok.Getter;
 import lombok.Setter;
@@ -15,4 +16,11 @@ public class IceServer {
 
     private String credential;
 
+    /**
+     * JSON of this server, filled in by {@code ResponseTemplates} the first
+     * time it is sent. ICE servers are not modified once handed to a peer.
+     */
+    @JsonIgnore
+    private String encoded;
+
 }
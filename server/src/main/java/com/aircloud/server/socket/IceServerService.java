@@ -0,0 +1,92 @@
+package com.aircloud.server.socket;
+
+import com.aircloud.server.security.TurnCredentialService;
+import com.aircloud.server.turn.TurnEndpoint;
+import com.aircloud.server.turn.TurnPool;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Hands out STUN/TURN servers to peers and remembers what was handed out, so
+ * credentials are only regenerated when they are close to expiry, when the
+ * pool has been reconfigured or when the peer's TURN server became unhealthy
+ * while another one is healthy. With the whole pool down a new assignment
+ * would hand out the same servers again, so peers keep their credentials.
+ * <p>
+ * Every TURN server of the pool shares the same secret, so one set of
+ * credentials is valid for all servers handed to a peer.
+ */
+@Service
+@RequiredArgsConstructor
+public class IceServerService {
+
+    public final static int CREDENTIAL_TTL = 3600;
+
+    private final TurnPool pool;
+
+    public boolean isStale(
+            final Peer peer,
+            final Instant refreshBefore
+    ) {
+        return peer.getIceServersExpiresAt() == null
+                || peer.getIceServersExpiresAt().isBefore(refreshBefore)
+                || peer.getIceServersVersion() != pool.getVersion()
+                || (peer.getTurnEndpoint() != null && !peer.getTurnEndpoint().isHealthy() && pool.hasHealthy());
+    }
+
+    public void assign(
+            final WebSocketSession session,
+            final Peer peer
+    ) throws Exception {
+        final long assignedVersion = pool.getVersion();
+        final TurnCredentialService.EphemeralCredentials credentials = TurnCredentialService.generate(session.getId(), CREDENTIAL_TTL);
+        final List<TurnEndpoint> selected = pool.select();
+
+        release(peer);
+        peer.setIceServersVersion(assignedVersion);
+        peer.setIceServersExpiresAt(Instant.now().plusSeconds(CREDENTIAL_TTL));
+
+        if (credentials == null || selected.isEmpty()) {
+            peer.setIceServers(null);
+            return;
+        }
+
+        final List<IceServer> iceServers = new ArrayList<>(selected.size() + 1);
+
+        final IceServer stun = new IceServer();
+        stun.setUrls(selected.getFirst().getStunUrl());
+        iceServers.add(stun);
+
+        for (TurnEndpoint endpoint : selected) {
+            final IceServer turn = new IceServer();
+            turn.setUrls(endpoint.getTurnUrl());
+            turn.setUsername(credentials.username());
+            turn.setCredential(credentials.credential());
+            iceServers.add(turn);
+        }
+
+        final TurnEndpoint primary = selected.getFirst();
+        primary.getAssignedPeers().incrementAndGet();
+
+        peer.setTurnEndpoint(primary);
+        peer.setIceServers(iceServers);
+    }
+
+    /**
+     * Stop counting the peer towards the load of its TURN server.
+     */
+    public void release(final Peer peer) {
+        final TurnEndpoint endpoint = peer.getTurnEndpoint();
+
+        if (endpoint != null) {
+            endpoint.getAssignedPeers().decrementAndGet();
+            peer.setTurnEndpoint(null);
+        }
+    }
+
+}
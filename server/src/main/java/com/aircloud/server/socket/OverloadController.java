@@ -0,0 +1,333 @@
+package com.aircloud.server.socket;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+
+/**
+ * Decides how much best-effort signaling the server can afford.
+ * <p>
+ * Queueing delays, from a frame arriving to its handler starting, and send
+ * latencies are averaged per second. Once a second the level takes at most
+ * one step: NORMAL goes to DEFER at the defer threshold, DEFER to SHED at the
+ * shed threshold, SHED back to DEFER under half of the shed threshold and
+ * DEFER back to NORMAL under half of the defer threshold. Only network
+ * discovery broadcasts and token refreshes are affected, OFFER/ANSWER/ICE
+ * relays and direct connections are always forwarded.
+ * <p>
+ * The queueing delay is only measured with shards enabled. Without shards a
+ * frame is handled on the container thread that read it and its queueing
+ * delay is about zero, the time frames wait for a container thread is not
+ * measured. The level then only follows send latencies, so a server saturated
+ * by CPU rather than slow clients stays NORMAL.
+ * <p>
+ * Deferred broadcasts keep their order with direct messages: a peer is queued
+ * for draining once, when its outbox becomes non-empty, and its outbox is
+ * flushed before any direct message to it.
+ */
+@Log4j2
+@Component
+public class OverloadController {
+
+    /**
+     * Upper bound of deferred broadcasts across all peers, anything above is dropped.
+     */
+    private final static int MAX_DEFERRED = 100_000;
+
+    /**
+     * Deferred broadcasts sent per drain tick while deferring.
+     */
+    private final static int DEFERRED_BUDGET = 500;
+
+    @Value("${aircloud.overload.defer-threshold}")
+    private long DEFER_THRESHOLD;
+
+    @Value("${aircloud.overload.shed-threshold}")
+    private long SHED_THRESHOLD;
+
+    public enum Level {
+
+        NORMAL,
+        DEFER,
+        SHED,
+
+    }
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+
+    private final LongAdder queueNanos = new LongAdder();
+    private final LongAdder queueCount = new LongAdder();
+    private final LongAdder sendNanos = new LongAdder();
+    private final LongAdder sendCount = new LongAdder();
+
+    private final Queue<Peer> pending = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger deferred = new AtomicInteger();
+
+    private final LongAdder deferredBroadcasts = new LongAdder();
+    private final LongAdder droppedBroadcasts = new LongAdder();
+    private final LongAdder skippedRefreshes = new LongAdder();
+
+    private volatile Level level = Level.NORMAL;
+
+    private volatile long queueDelay;
+
+    private volatile long sendLatency;
+
+    @PostConstruct
+    public void start() {
+        scheduler.scheduleAtFixedRate(this::evaluate, 1, 1, TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        scheduler.shutdownNow();
+    }
+
+    public Level getLevel() {
+        return level;
+    }
+
+    /**
+     * @param nanos time from a frame arriving to its handler starting
+     */
+    public void recordQueueDelay(final long nanos) {
+        queueNanos.add(nanos);
+        queueCount.increment();
+    }
+
+    public void recordSendLatency(final long nanos) {
+        sendNanos.add(nanos);
+        sendCount.increment();
+    }
+
+    public void recordSkippedRefresh() {
+        skippedRefreshes.increment();
+    }
+
+    /**
+     * Route a best-effort broadcast according to the current level.
+     *
+     * @return true if the caller should send the message now
+     */
+    public boolean admitBroadcast(
+            final Peer target,
+            final Object message
+    ) {
+        switch (level) {
+            case NORMAL -> {
+                return true;
+            }
+            case DEFER -> {
+                if (deferred.incrementAndGet() <= MAX_DEFERRED) {
+                    target.getOutbox().add(message);
+                    schedule(target);
+                    deferredBroadcasts.increment();
+                } else {
+                    deferred.decrementAndGet();
+                    droppedBroadcasts.increment();
+                }
+
+                return false;
+            }
+            default -> {
+                droppedBroadcasts.increment();
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Send deferred broadcasts while the server is not shedding, all of them
+     * at the normal level and a bounded amount while deferring.
+     *
+     * @param sender sends one message to one peer
+     */
+    public void drainDeferred(final BiConsumer<Peer, Object> sender) {
+        if (level == Level.SHED) {
+            return;
+        }
+
+        int budget = level == Level.NORMAL ? Integer.MAX_VALUE : DEFERRED_BUDGET;
+        Peer peer;
+
+        while (budget > 0 && (peer = pending.poll()) != null) {
+            final boolean drained;
+
+            synchronized (peer.getOutbox()) {
+                budget -= flush(peer, sender, budget);
+                drained = peer.getOutbox().isEmpty();
+
+                if (drained) {
+                    peer.getOutboxScheduled().set(false);
+                }
+            }
+
+            if (!drained) {
+                pending.add(peer);
+            } else if (!peer.getOutbox().isEmpty()) {
+                schedule(peer);
+            }
+        }
+    }
+
+    /**
+     * Send the deferred broadcasts of a peer ahead of a direct message to it,
+     * whatever the level, so it never hears from a neighbour whose disconnect
+     * is still queued.
+     *
+     * @param sender sends one message to one peer
+     */
+    public void flushDeferred(
+            final Peer target,
+            final BiConsumer<Peer, Object> sender
+    ) {
+        if (!target.getOutboxScheduled().get()) {
+            return;
+        }
+
+        synchronized (target.getOutbox()) {
+            flush(target, sender, Integer.MAX_VALUE);
+        }
+    }
+
+    /**
+     * Hand the deferred broadcasts of a replaced peer over to the peer that
+     * took over its ID, they stay counted against {@link #MAX_DEFERRED}.
+     *
+     * @param from peer whose session was taken over
+     * @param to   peer of the new session
+     */
+    public void transferDeferred(
+            final Peer from,
+            final Peer to
+    ) {
+        Object message;
+        boolean moved = false;
+
+        while ((message = from.getOutbox().poll()) != null) {
+            to.getOutbox().add(message);
+            moved = true;
+        }
+
+        if (moved) {
+            schedule(to);
+        }
+    }
+
+    /**
+     * Queue the peer for draining unless it already is.
+     */
+    private void schedule(final Peer peer) {
+        if (peer.getOutboxScheduled().compareAndSet(false, true)) {
+            pending.add(peer);
+        }
+    }
+
+    /**
+     * Send up to budget deferred messages of the peer, callers hold its
+     * outbox so drains and flushes don't reorder them.
+     *
+     * @return number of messages taken from the outbox
+     */
+    private int flush(
+            final Peer peer,
+            final BiConsumer<Peer, Object> sender,
+            final int budget
+    ) {
+        int sent = 0;
+        Object message;
+
+        while (sent < budget && (message = peer.getOutbox().poll()) != null) {
+            deferred.decrementAndGet();
+            sent++;
+
+            try {
+                sender.accept(peer, message);
+            } catch (RuntimeException e) {
+                log.debug("Deferred broadcast to peer ID {} failed", peer.getPeerId());
+            }
+        }
+
+        return sent;
+    }
+
+    public long getQueueDelay() {
+        return queueDelay;
+    }
+
+    public long getSendLatency() {
+        return sendLatency;
+    }
+
+    public long getDeferredBroadcasts() {
+        return deferredBroadcasts.sum();
+    }
+
+    public long getDroppedBroadcasts() {
+        return droppedBroadcasts.sum();
+    }
+
+    public long getSkippedRefreshes() {
+        return skippedRefreshes.sum();
+    }
+
+    public int getPendingBroadcasts() {
+        return deferred.get();
+    }
+
+    void evaluate() {
+        queueDelay = average(queueNanos, queueCount);
+        sendLatency = average(sendNanos, sendCount);
+
+        final long latency = TimeUnit.NANOSECONDS.toMillis(Math.max(queueDelay, sendLatency));
+        final Level previous = level;
+
+        level = next(previous, latency);
+
+        if (level != previous) {
+            log.warn("Shedding level changed from {} to {} at {} ms latency", previous, level, latency);
+        }
+    }
+
+    /**
+     * @param latency averaged latency of the last second in milliseconds
+     * @return level for the next second, at most one step away
+     */
+    Level next(
+            final Level current,
+            final long latency
+    ) {
+        return switch (current) {
+            case NORMAL -> latency >= DEFER_THRESHOLD ? Level.DEFER : Level.NORMAL;
+            case DEFER -> {
+                if (latency >= SHED_THRESHOLD) {
+                    yield Level.SHED;
+                }
+
+                yield latency < DEFER_THRESHOLD / 2 ? Level.NORMAL : Level.DEFER;
+            }
+            case SHED -> latency < SHED_THRESHOLD / 2 ? Level.DEFER : Level.SHED;
+        };
+    }
+
+    private static long average(
+            final LongAdder nanos,
+            final LongAdder count
+    ) {
+        final long n = count.sumThenReset();
+        final long total = nanos.sumThenReset();
+        return n == 0 ? 0 : total / n;
+    }
+
+}
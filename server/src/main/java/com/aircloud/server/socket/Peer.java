@@ -1,5 +1,7 @@
 package com.aircloud.server.socket;
 
+import com.aircloud.server.network.NetworkGroup;
+import com.aircloud.server.turn.TurnEndpoint;
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import lombok.Getter;
 import lombok.Setter;
@@ -8,8 +10,12 @@ import ua_parser.Client;
 import ua_parser.Parser;
 
 import java.time.Instant;
+import java.util.List;
 import java.util.Objects;
+import java.util.Queue;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 @Getter
 @Setter
@@ -21,12 +27,54 @@ public class Peer {
     @JsonIgnore
     private String ipAddress;
 
+    @JsonIgnore
+    private NetworkGroup network;
+
     @JsonIgnore
     private DiscoveryMode discoveryMode = DiscoveryMode.NETWORK;
 
     @JsonIgnore
     private Instant lastSeen;
 
+    @JsonIgnore
+    private Instant authTokenExpiresAt;
+
+    @JsonIgnore
+    private List<IceServer> iceServers;
+
+    @JsonIgnore
+    private Instant iceServersExpiresAt;
+
+    @JsonIgnore
+    private long iceServersVersion;
+
+    @JsonIgnore
+    private TurnEndpoint turnEndpoint;
+
+    @JsonIgnore
+    private final Queue<Object> outbox = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Whether the peer is queued for its outbox to be drained.
+     */
+    @JsonIgnore
+    private final AtomicBoolean outboxScheduled = new AtomicBoolean();
+
+    /**
+     * Name and discovery mode the network group last heard about.
+     */
+    @JsonIgnore
+    private String announcedName;
+
+    @JsonIgnore
+    private DiscoveryMode announcedDiscoveryMode;
+
+    @JsonIgnore
+    private volatile long settingsChangedAt;
+
+    @JsonIgnore
+    private final AtomicBoolean settingsUpdatePending = new AtomicBoolean();
+
     private UUID peerId;
 
     private UUID privateKey;
@@ -0,0 +1,121 @@
+package com.aircloud.server.socket;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Keeps peers ordered by the time they are considered dead, so the heartbeat
+ * only has to look at the head of the index instead of scanning every peer.
+ */
+@Component
+public class SessionReaper {
+
+    /**
+     * Deadlines closer than this to the indexed one are not re-indexed,
+     * otherwise every inbound frame would reshuffle the skip list.
+     */
+    private final static long REINDEX_GRANULARITY = 1000;
+
+    @Value("${aircloud.heartbeat.max-missed-pongs}")
+    private int MAX_MISSED_PONGS;
+
+    private final ConcurrentSkipListMap<Expiry, Peer> expiries = new ConcurrentSkipListMap<>();
+    private final Map<Peer, Expiry> expiryByPeer = new ConcurrentHashMap<>();
+    private final AtomicLong sequence = new AtomicLong();
+
+    private final LongAdder reapedIdleSessions = new LongAdder();
+    private final LongAdder reapedBrokenSessions = new LongAdder();
+
+    public void touch(final Peer peer) {
+        final long timeout = TimeUnit.SECONDS.toMillis(WebSocketHandler.HEARTBEAT_PERIOD) * MAX_MISSED_PONGS;
+        final long deadline = peer.getLastSeen().toEpochMilli() + timeout;
+        final Expiry current = expiryByPeer.get(peer);
+
+        if (current != null && deadline - current.deadline() < REINDEX_GRANULARITY) {
+            return;
+        }
+
+        final Expiry next = new Expiry(deadline, sequence.incrementAndGet(), peer);
+        final Expiry previous = expiryByPeer.put(peer, next);
+
+        if (previous != null) {
+            expiries.remove(previous);
+        }
+
+        expiries.put(next, peer);
+    }
+
+    public void untrack(final Peer peer) {
+        final Expiry previous = expiryByPeer.remove(peer);
+
+        if (previous != null) {
+            expiries.remove(previous);
+        }
+    }
+
+    /**
+     * Remove and return every peer whose deadline has passed. Entries left
+     * behind by concurrent touches are discarded on the way.
+     */
+    public List<Peer> collectExpired(final long now) {
+        final List<Peer> expired = new ArrayList<>();
+        Expiry head;
+
+        while ((head = pollExpired(now)) != null) {
+            if (expiryByPeer.remove(head.peer(), head)) {
+                expired.add(head.peer());
+            }
+        }
+
+        reapedIdleSessions.add(expired.size());
+        return expired;
+    }
+
+    public void recordBrokenSession() {
+        reapedBrokenSessions.increment();
+    }
+
+    public long getReapedIdleSessions() {
+        return reapedIdleSessions.sum();
+    }
+
+    public long getReapedBrokenSessions() {
+        return reapedBrokenSessions.sum();
+    }
+
+    public int getTrackedSessions() {
+        return expiryByPeer.size();
+    }
+
+    private Expiry pollExpired(final long now) {
+        Map.Entry<Expiry, Peer> head;
+
+        while ((head = expiries.firstEntry()) != null && head.getKey().deadline() <= now) {
+            if (expiries.remove(head.getKey()) != null) {
+                return head.getKey();
+            }
+        }
+
+        return null;
+    }
+
+    private record Expiry(long deadline, long sequence, Peer peer) implements Comparable<Expiry> {
+
+        @Override
+        public int compareTo(final Expiry other) {
+            final int byDeadline = Long.compare(deadline, other.deadline);
+            return byDeadline != 0 ? byDeadline : Long.compare(sequence, other.sequence);
+        }
+
+    }
+
+}
@@ -0,0 +1,334 @@
+package com.aircloud.server.socket;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.adapter.NativeWebSocketSession;
+import org.springframework.web.socket.handler.ConcurrentWebSocketSessionDecorator;
+
+import java.io.IOException;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Opt-in execution mode that runs the inbound events of sessions on
+ * single-threaded shards, one per core by default, behind bounded mailboxes.
+ * <p>
+ * The inbound events of a session, its open, messages and pongs, run in
+ * order on the shard its session ID maps to. Shards do not own any state:
+ * the peer registry, the network index and the session writers are shared by
+ * all shards and the heartbeat and are safe for concurrent use by themselves,
+ * so sharding bounds and orders inbound work but does not remove contention
+ * on them.
+ * <p>
+ * Writes do not go through the mailboxes. Every session gets a
+ * {@link ConcurrentWebSocketSessionDecorator} that any thread may write to:
+ * a writer finding the session busy buffers its message and returns, and a
+ * session that stays busy longer than {@code aircloud.shards.send-time-limit}
+ * or buffers more than {@code aircloud.shards.buffer-size-limit} is closed, so
+ * a slow client cannot stall its shard.
+ * <p>
+ * Mailboxes hold at most {@code aircloud.shards.mailbox-capacity} inbound
+ * events. A container thread finding the mailbox full waits up to
+ * {@code aircloud.shards.mailbox-wait} milliseconds, which stops reading from
+ * its socket, before the session is closed as overloaded. Session closes and
+ * internal tasks, at most a few per peer, are always accepted.
+ * <p>
+ * Sessions are assigned by session ID, the peer ID is only known after
+ * CONNECT. When disabled, tasks run on the calling thread.
+ */
+@Log4j2
+@Component
+public class ShardExecutor {
+
+    /**
+     * Session attribute holding the decorator every write goes through.
+     */
+    private final static String WRITER_ATTRIBUTE = "shardWriter";
+
+    /**
+     * How long Tomcat blocks in a single send before failing it.
+     */
+    private final static String BLOCKING_SEND_TIMEOUT = "org.apache.tomcat.websocket.BLOCKING_SEND_TIMEOUT";
+
+    @Value("${aircloud.shards.enabled}")
+    private boolean ENABLED;
+
+    /**
+     * Number of shards, 0 for one per available processor.
+     */
+    @Value("${aircloud.shards.count}")
+    private int COUNT;
+
+    @Value("${aircloud.shards.mailbox-capacity}")
+    private int MAILBOX_CAPACITY;
+
+    /**
+     * Milliseconds a container thread waits for room in a full mailbox.
+     */
+    @Value("${aircloud.shards.mailbox-wait}")
+    private long MAILBOX_WAIT;
+
+    /**
+     * Milliseconds a single send may take before the session is closed.
+     */
+    @Value("${aircloud.shards.send-time-limit}")
+    private int SEND_TIME_LIMIT;
+
+    /**
+     * Bytes buffered for a busy session before it is closed.
+     */
+    @Value("${aircloud.shards.buffer-size-limit}")
+    private int BUFFER_SIZE_LIMIT;
+
+    private Shard[] shards = new Shard[0];
+
+    @FunctionalInterface
+    public interface Task {
+
+        void run() throws Exception;
+
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!ENABLED) {
+            return;
+        }
+
+        shards = new Shard[COUNT > 0 ? COUNT : Runtime.getRuntime().availableProcessors()];
+
+        for (int i = 0; i < shards.length; i++) {
+            shards[i] = new Shard(i, MAILBOX_CAPACITY);
+            shards[i].thread.start();
+        }
+
+        log.info("Running peers on {} shard(s)", shards.length);
+    }
+
+    @PreDestroy
+    public void stop() {
+        for (Shard shard : shards) {
+            shard.running = false;
+            LockSupport.unpark(shard.thread);
+        }
+    }
+
+    public boolean isEnabled() {
+        return shards.length > 0;
+    }
+
+    public int getShardCount() {
+        return shards.length;
+    }
+
+    /**
+     * Prepare a new session for writes from any thread. Must run before any
+     * other event of the session is dispatched.
+     */
+    public void register(final WebSocketSession session) {
+        if (!isEnabled()) {
+            return;
+        }
+
+        if (session instanceof NativeWebSocketSession nativeSession
+                && nativeSession.getNativeSession() instanceof jakarta.websocket.Session standardSession) {
+            standardSession.getUserProperties().put(BLOCKING_SEND_TIMEOUT, (long) SEND_TIME_LIMIT);
+        }
+
+        session.getAttributes().put(WRITER_ATTRIBUTE, new ConcurrentWebSocketSessionDecorator(
+                session, SEND_TIME_LIMIT, BUFFER_SIZE_LIMIT, ConcurrentWebSocketSessionDecorator.OverflowStrategy.TERMINATE
+        ));
+    }
+
+    /**
+     * @return the session to write to, safe to use from any thread while
+     * sharding is enabled
+     */
+    public WebSocketSession writerOf(final WebSocketSession session) {
+        final Object writer = session.getAttributes().get(WRITER_ATTRIBUTE);
+        return writer != null ? (WebSocketSession) writer : session;
+    }
+
+    /**
+     * Run an inbound event of the session on its shard. A failing task closes
+     * the session, as the WebSocket container does for a failing handler, and
+     * so does a mailbox that stays full.
+     */
+    public void dispatch(
+            final WebSocketSession session,
+            final Task task
+    ) throws Exception {
+        if (!isEnabled()) {
+            task.run();
+            return;
+        }
+
+        final Runnable event = () -> {
+            try {
+                task.run();
+            } catch (Exception e) {
+                log.warn("Closing session {} after failed event", session.getId(), e);
+                close(writerOf(session), CloseStatus.SERVER_ERROR);
+            }
+        };
+
+        if (!shardOf(session).offer(event, TimeUnit.MILLISECONDS.toNanos(MAILBOX_WAIT))) {
+            log.warn("Closing session {}, its shard is full", session.getId());
+            close(writerOf(session), CloseStatus.SERVICE_OVERLOAD);
+        }
+    }
+
+    /**
+     * Run the task right away on the shard of the session or when sharding
+     * is disabled, otherwise post it to the mailbox of that shard, even if
+     * the mailbox is full.
+     */
+    public void execute(
+            final WebSocketSession session,
+            final Runnable task
+    ) {
+        if (!isEnabled()) {
+            task.run();
+            return;
+        }
+
+        final Shard shard = shardOf(session);
+
+        if (Thread.currentThread() == shard.thread) {
+            task.run();
+        } else {
+            shard.post(() -> {
+                try {
+                    task.run();
+                } catch (RuntimeException e) {
+                    log.debug("Task for session {} failed", session.getId(), e);
+                }
+            });
+        }
+    }
+
+    private Shard shardOf(final WebSocketSession session) {
+        return shards[Math.floorMod(session.getId().hashCode(), shards.length)];
+    }
+
+    private static void close(
+            final WebSocketSession session,
+            final CloseStatus status
+    ) {
+        try {
+            session.close(status);
+        } catch (IOException e) {
+            log.debug("Session {} was already gone", session.getId());
+        }
+    }
+
+    private static class Shard implements Runnable {
+
+        /**
+         * Nanoseconds a producer parks between checks for room.
+         */
+        private final static long BACKOFF = TimeUnit.MICROSECONDS.toNanos(50);
+
+        private final Queue<Runnable> mailbox = new ConcurrentLinkedQueue<>();
+
+        private final AtomicInteger size = new AtomicInteger();
+
+        private final int capacity;
+
+        private final AtomicBoolean parked = new AtomicBoolean();
+
+        private final Thread thread;
+
+        private volatile boolean running = true;
+
+        Shard(int index, int capacity) {
+            this.capacity = capacity;
+            this.thread = new Thread(this, "shard-" + index);
+            this.thread.setDaemon(true);
+        }
+
+        /**
+         * Post the task once the mailbox has room.
+         *
+         * @return false if the mailbox stayed full for the whole timeout
+         */
+        boolean offer(
+                final Runnable task,
+                final long timeoutNanos
+        ) {
+            final long deadline = System.nanoTime() + timeoutNanos;
+
+            while (true) {
+                final int current = size.get();
+
+                if (current < capacity && size.compareAndSet(current, current + 1)) {
+                    enqueue(task);
+                    return true;
+                }
+
+                if (current >= capacity) {
+                    if (System.nanoTime() - deadline >= 0) {
+                        return false;
+                    }
+
+                    LockSupport.parkNanos(this, BACKOFF);
+                }
+            }
+        }
+
+        void post(final Runnable task) {
+            size.incrementAndGet();
+            enqueue(task);
+        }
+
+        /**
+         * The shard announces it is about to park before it checks the
+         * mailbox a last time, so a task posted in between either is seen or
+         * unparks the shard.
+         */
+        private void enqueue(final Runnable task) {
+            mailbox.offer(task);
+
+            if (parked.get()) {
+                LockSupport.unpark(thread);
+            }
+        }
+
+        @Override
+        public void run() {
+            while (running) {
+                final Runnable task = mailbox.poll();
+
+                if (task == null) {
+                    parked.set(true);
+
+                    if (mailbox.isEmpty()) {
+                        LockSupport.park(this);
+                    }
+
+                    parked.set(false);
+                    continue;
+                }
+
+                size.decrementAndGet();
+
+                try {
+                    task.run();
+                } catch (RuntimeException e) {
+                    log.warn("Shard task failed", e);
+                }
+            }
+        }
+
+    }
+
+}
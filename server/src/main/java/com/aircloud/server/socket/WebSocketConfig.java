@@ -1,5 +1,6 @@
 package com.aircloud.server.socket;
 
+import com.aircloud.server.network.ClientAddressResolver;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.web.socket.config.annotation.*;
@@ -13,14 +14,20 @@ public class WebSocketConfig implements WebSocketConfigurer {
 
     private final WebSocketHandler handler;
 
-    public WebSocketConfig(WebSocketHandler handler) {
+    private final AdmissionController admission;
+
+    private final ClientAddressResolver clientAddresses;
+
+    public WebSocketConfig(WebSocketHandler handler, AdmissionController admission, ClientAddressResolver clientAddresses) {
         this.handler = handler;
+        this.admission = admission;
+        this.clientAddresses = clientAddresses;
     }
 
     @Override
     public void registerWebSocketHandlers(WebSocketHandlerRegistry registry) {
         registry.addHandler(handler, "/ws")
-                .addInterceptors(new WebSocketInterceptor())
+                .addInterceptors(new WebSocketInterceptor(admission, clientAddresses))
                 .setAllowedOrigins(CORS_ORIGIN);
     }
 
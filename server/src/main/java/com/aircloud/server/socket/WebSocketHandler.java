@@ -1,53 +1,112 @@
 package com.aircloud.server.socket;
 
+import com.aircloud.server.capture.SignalCapture;
+import com.aircloud.server.ice.CandidateFilter;
+import com.aircloud.server.jfr.HeartbeatSweepEvent;
+import com.aircloud.server.jfr.PeerConnectEvent;
+import com.aircloud.server.jfr.PeerDisconnectEvent;
+import com.aircloud.server.jfr.RelayEvent;
+import com.aircloud.server.logging.LogSampler;
+import com.aircloud.server.network.NetworkGroup;
+import com.aircloud.server.network.NetworkIndex;
+import com.aircloud.server.sdp.SdpMinimizer;
 import com.aircloud.server.security.Auth;
 import com.aircloud.server.security.ConnectionIdGenerator;
 import com.aircloud.server.security.JwtService;
-import com.aircloud.server.security.TurnCredentialService;
 import com.aircloud.server.socket.dto.request.*;
 import com.aircloud.server.socket.dto.response.*;
+import com.aircloud.server.socket.relay.RelayEnvelope;
+import com.aircloud.server.socket.relay.RelayFrame;
+import com.aircloud.server.socket.template.ResponseTemplates;
+import com.aircloud.server.stats.NegotiationTracker;
+import com.aircloud.server.stats.RegistryStats;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
 import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.log4j.Log4j2;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 import org.springframework.web.socket.*;
+import org.springframework.web.socket.handler.SessionLimitExceededException;
 import org.springframework.web.socket.handler.TextWebSocketHandler;
 
 import java.io.IOException;
+import java.time.Instant;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.function.BiConsumer;
 
 @Log4j2
 @Component
 @RequiredArgsConstructor
 public class WebSocketHandler extends TextWebSocketHandler {
 
-    @Value("${aircloud.turn.stun-ip}")
-    private String STUN_IP;
+    @Value("${aircloud.heartbeat.refresh-margin}")
+    private int REFRESH_MARGIN;
 
-    @Value("${aircloud.turn.turn-ip}")
-    private String TURN_IP;
+    @Value("${aircloud.settings.debounce}")
+    private int SETTINGS_DEBOUNCE;
 
-    private final static int HEARTBEAT_PERIOD = 15;
+    final static int HEARTBEAT_PERIOD = 15;
+
+    private final static int DEFERRED_DRAIN_PERIOD = 100;
+
+    /**
+     * Sent to a session whose peer ID was taken over by a newer session.
+     */
+    final static CloseStatus SESSION_TAKEN_OVER = new CloseStatus(4001, "Session taken over");
+
+    private final SessionReaper reaper;
+
+    private final IceServerService iceServerService;
+
+    private final SignalCapture capture;
+
+    private final OverloadController overload;
+
+    private final RegistryStats registryStats;
+
+    private final AdmissionController admission;
+
+    private final ShardExecutor shards;
+
+    private final NetworkIndex networkIndex;
+
+    private final NegotiationTracker negotiations;
+
+    private final CandidateFilter candidates;
+
+    private final SdpMinimizer sdpMinimizer;
+
+    private final LogSampler logSampler;
 
     private final Set<Peer> peers = ConcurrentHashMap.newKeySet();
+    private final Map<UUID, Peer> peersById = new ConcurrentHashMap<>();
+    private final Map<String, Peer> peersBySession = new ConcurrentHashMap<>();
     private final ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(1);
 
+    /**
+     * Sends a deferred broadcast, see {@link OverloadController}.
+     */
+    private final BiConsumer<Peer, Object> deferredSender = (peer, message) -> sendMessage(peer.getSession(), message);
+
     @Override
     public void afterConnectionEstablished(
             final WebSocketSession session
-    ) {
-        connectPeer(session);
+    ) throws Exception {
+        shards.register(session);
+        shards.dispatch(session, () -> connectionEstablished(session));
     }
 
     @Override
     public void afterConnectionClosed(
             final WebSocketSession session,
             final CloseStatus status
-    ) {
-        unconnectPeer(session);
+    ) throws Exception {
+        shards.execute(session, () -> connectionClosed(session));
     }
 
     @Override
@@ -55,34 +114,174 @@ public class WebSocketHandler extends TextWebSocketHandler {
             final WebSocketSession session,
             final PongMessage message
     ) throws Exception {
+        shards.dispatch(session, () -> pongReceived(session));
+    }
+
+    private void connectionEstablished(final WebSocketSession session) throws Exception {
+        final Peer peer = connectPeer(session);
+        capture.opened(session);
+
+        final PeerConnectRequest connectRequest = (PeerConnectRequest) session.getAttributes().remove(WebSocketInterceptor.CONNECT_REQUEST_ATTRIBUTE);
+
+        if (connectRequest != null) {
+            capture.request(session, connectRequest);
+            handleConnect(session, peer, connectRequest, true);
+        }
+    }
+
+    private void connectionClosed(final WebSocketSession session) {
+        capture.closed(session);
+        unconnectPeer(session);
+
+        if (session.getAttributes().remove(AdmissionController.ADMITTED_ATTRIBUTE) != null) {
+            admission.connectionClosed((String) session.getAttributes().get("ipAddress"));
+        }
+    }
+
+    private void pongReceived(final WebSocketSession session) throws Exception {
+        capture.pong(session);
+
         final Peer peer = findPeerBySession(session);
 
-        peer.updatePeerSession(session);
-        peer.renewPrivateKey();
+        if (peer == null) {
+            return;
+        }
+
+        touchPeer(session, peer);
 
-        final String token = JwtService.issueAuthToken(peer.getPeerId(), peer.getConnectionId(), peer.getPrivateKey());
-        sendMessage(session, new PingPongResponse(token, generateIceServers(session)));
+        if (peer.getPeerId() != null) {
+            refreshCredentials(session, peer);
+        }
 
-        log.info("Pong received from peer ID {}", peer.getPeerId());
+        if (logSampler.sample(LogSampler.Event.PONG)) {
+            log.info("Pong received from peer ID {}", peer.getPeerId());
+        }
+    }
+
+    /**
+     * Reissue the auth token and ICE servers only when one of them expires
+     * before the next few heartbeats or the ICE endpoints have changed. A pong
+     * from a peer with fresh credentials costs no signing and no message.
+     * While the server is overloaded, refreshes wait until the token would
+     * otherwise expire before the next heartbeat.
+     * <p>
+     * With the default TTLs this reissues the token on every sixth pong
+     * (every 90 s) and TURN credentials once an hour. These rates are
+     * estimates derived from the TTLs, not measured under load.
+     *
+     * @param session unique WebSocket session
+     * @param peer    peer who answered the heartbeat
+     */
+    private void refreshCredentials(
+            final WebSocketSession session,
+            final Peer peer
+    ) throws Exception {
+        final boolean overloaded = overload.getLevel() != OverloadController.Level.NORMAL;
+        final long margin = overloaded ? 2L * HEARTBEAT_PERIOD : REFRESH_MARGIN;
+        final Instant refreshBefore = peer.getLastSeen().plusSeconds(margin);
+        final boolean renewIceServers = iceServerService.isStale(peer, refreshBefore);
+        final boolean renewToken = peer.getAuthTokenExpiresAt() == null || peer.getAuthTokenExpiresAt().isBefore(refreshBefore);
+
+        if (!renewIceServers && !renewToken) {
+            if (overloaded && peer.getAuthTokenExpiresAt().isBefore(peer.getLastSeen().plusSeconds(REFRESH_MARGIN))) {
+                overload.recordSkippedRefresh();
+            }
+
+            return;
+        }
+
+        if (renewIceServers) {
+            iceServerService.assign(session, peer);
+        }
+
+        sendMessage(peer, new PingPongResponse(issueAuthToken(peer), peer.getIceServers()));
+    }
+
+    private String issueAuthToken(final Peer peer) {
+        peer.renewPrivateKey();
+        peer.setAuthTokenExpiresAt(Instant.now().plusMillis(JwtService.AUTH_TOKEN_TTL));
+        return JwtService.issueAuthToken(peer.getPeerId(), peer.getConnectionId(), peer.getPrivateKey());
     }
 
     @PostConstruct
     public void startHeartbeat() {
-        scheduler.scheduleAtFixedRate(() -> {
-            for (Peer peer : peers) {
-                if (peer.getSession().isOpen()) {
-                    try {
-                        peer.getSession().sendMessage(new PingMessage());
-                    } catch (IOException e) {
-                        unconnectPeer(peer.getSession());
-                    }
+        scheduler.scheduleAtFixedRate(this::sweep, 0, WebSocketHandler.HEARTBEAT_PERIOD, TimeUnit.SECONDS);
+
+        scheduler.scheduleWithFixedDelay(
+                () -> overload.drainDeferred(deferredSender),
+                DEFERRED_DRAIN_PERIOD, DEFERRED_DRAIN_PERIOD, TimeUnit.MILLISECONDS
+        );
+    }
+
+    @PreDestroy
+    public void stopHeartbeat() {
+        scheduler.shutdownNow();
+    }
+
+    /**
+     * Ping every peer and evict the ones that stopped answering or whose
+     * session broke.
+     */
+    void sweep() {
+        final HeartbeatSweepEvent event = new HeartbeatSweepEvent();
+        event.begin();
+
+        final List<Peer> expired = reaper.collectExpired(System.currentTimeMillis());
+
+        for (Peer peer : peers) {
+            final WebSocketSession session = peer.getSession();
+
+            if (!shards.isEnabled()) {
+                if (!ping(session)) {
+                    expired.add(peer);
                 }
+            } else {
+                shards.execute(session, () -> {
+                    if (!ping(session)) {
+                        evictPeers(List.of(peer));
+                    }
+                });
             }
-        }, 0, WebSocketHandler.HEARTBEAT_PERIOD, TimeUnit.SECONDS);
+        }
+
+        if (!expired.isEmpty()) {
+            try {
+                evictPeers(expired);
+            } catch (RuntimeException e) {
+                log.warn("Failed to notify network about evicted peers", e);
+            }
+
+            log.info("Reaped {} idle or broken session(s)", expired.size());
+        }
+
+        if (event.shouldCommit()) {
+            event.peers = peers.size();
+            event.evicted = expired.size();
+            event.commit();
+        }
     }
 
     /**
-     * Handle requests sent through messages.
+     * @return false if the session is broken
+     */
+    private boolean ping(final WebSocketSession session) {
+        if (!session.isOpen()) {
+            return true;
+        }
+
+        try {
+            shards.writerOf(session).sendMessage(new PingMessage());
+            return true;
+        } catch (IOException e) {
+            reaper.recordBrokenSession();
+            return false;
+        }
+    }
+
+    /**
+     * Handle requests sent through messages. A BATCH message carries several
+     * requests in its data array, they are handled in order for a sender that
+     * is looked up only once.
      *
      * @param session unique WebSocket session
      * @param message text message sent by session
@@ -92,35 +291,230 @@ public class WebSocketHandler extends TextWebSocketHandler {
             final WebSocketSession session,
             final TextMessage message
     ) throws Exception {
-        final BaseRequest payload = new ObjectMapper().readValue(message.getPayload(), BaseRequest.class);
+        final long received = System.nanoTime();
+
+        shards.dispatch(session, () -> {
+            overload.recordQueueDelay(System.nanoTime() - received);
+            handleFrame(session, message.getPayload(), received);
+        });
+    }
+
+    private void handleFrame(
+            final WebSocketSession session,
+            final String frame,
+            final long received
+    ) throws Exception {
+        final List<RelayFrame> requests = RelayFrame.parseAll(frame);
+
+        if (requests == null) {
+            final BaseRequest payload = new ObjectMapper().readValue(frame, BaseRequest.class);
+            final Peer peer = findPeerBySession(session);
+
+            if (peer != null) {
+                touchPeer(session, peer);
+                handleRequest(session, peer, payload, received);
+            }
+
+            return;
+        }
+
         final Peer peer = findPeerBySession(session);
 
         if (peer != null) {
-            peer.updatePeerSession(session);
-
-            switch (payload.getType()) {
-                case RequestType.CONNECT -> handleConnect(session, peer, payload);
-                case RequestType.OFFER -> handleOffer(peer, payload);
-                case RequestType.ANSWER -> handleAnswer(peer, payload);
-                case RequestType.PEER_CONNECT -> handlePeerConnect(session, payload);
-                case RequestType.PEER_RECONNECT -> handlePeerReconnect(session, payload);
-                case RequestType.CHANGE_SETTINGS -> handleChangeSettings(peer, payload);
-                case RequestType.ICE_CANDIDATE -> handleIceCandidate(session, payload);
-                case RequestType.END_OF_ICE_CANDIDATES -> handleEndOfIceCandidates(session, payload);
+            touchPeer(session, peer);
+
+            for (RelayFrame request : requests) {
+                try {
+                    handleScanned(session, peer, request, received);
+                } catch (Exception e) {
+                    if (!request.isBatched()) {
+                        throw e;
+                    }
+
+                    log.warn("Dropped a request of peer ID {} from a batch", peer.getPeerId(), e);
+                }
             }
         }
     }
 
-    private void connectPeer(final WebSocketSession session) {
+    /**
+     * Relay or handle one request of a frame. A failing request of a batch is
+     * dropped alone, the rest of the batch is still handled.
+     */
+    private void handleScanned(
+            final WebSocketSession session,
+            final Peer peer,
+            final RelayFrame request,
+            final long received
+    ) throws Exception {
+        if (!request.isValid()) {
+            throw new IllegalArgumentException("Request of unknown type or with a malformed field");
+        }
+
+        if (request.isRelayable()) {
+            capture.request(session, request);
+            relayMessage(peer, request, received);
+        } else if (request.getType() != null && request.getType() != RequestType.BATCH) {
+            handleRequest(session, peer, request.toRequest(), received);
+        }
+    }
+
+    /**
+     * Handle a request bound to its DTO, the fallback for requests the
+     * streaming relay path does not take.
+     *
+     * @param received {@link System#nanoTime()} when the frame arrived
+     */
+    private void handleRequest(
+            final WebSocketSession session,
+            final Peer peer,
+            final BaseRequest payload,
+            final long received
+    ) throws Exception {
+        capture.request(session, payload);
+
+        switch (payload.getType()) {
+            case RequestType.CONNECT -> handleConnect(session, peer, new ObjectMapper().convertValue(payload.getData(), PeerConnectRequest.class), false);
+            case RequestType.OFFER -> handleOffer(peer, payload, received);
+            case RequestType.ANSWER -> handleAnswer(peer, payload, received);
+            case RequestType.PEER_CONNECT -> handlePeerConnect(session, peer, payload);
+            case RequestType.PEER_RECONNECT -> handlePeerReconnect(peer, payload);
+            case RequestType.CHANGE_SETTINGS -> handleChangeSettings(peer, payload);
+            case RequestType.ICE_CANDIDATE -> handleIceCandidate(peer, payload, received);
+            case RequestType.END_OF_ICE_CANDIDATES -> handleEndOfIceCandidates(peer, payload);
+        }
+    }
+
+    private Peer connectPeer(final WebSocketSession session) {
         final Peer peer = new Peer(session);
+        networkIndex.add(peer);
         peers.add(peer);
+        peersBySession.put(session.getId(), peer);
+        reaper.touch(peer);
+        registryStats.peerConnected(peer);
+        return peer;
+    }
+
+    /**
+     * Record that the peer is alive and move it to its new network group when
+     * its IP address has changed.
+     */
+    private void touchPeer(
+            final WebSocketSession session,
+            final Peer peer
+    ) {
+        final String ipAddress = peer.getIpAddress();
+        final NetworkGroup network = peer.getNetwork();
+
+        peer.updatePeerSession(session);
+        reaper.touch(peer);
+
+        if (!Objects.equals(ipAddress, peer.getIpAddress()) && networkIndex.update(peer)) {
+            registryStats.networkChanged(network.getKey(), peer.getNetwork().getKey());
+        }
+    }
+
+    private void changeDiscoveryMode(
+            final Peer peer,
+            final DiscoveryMode discoveryMode
+    ) {
+        registryStats.discoveryModeChanged(peer.getDiscoveryMode(), discoveryMode);
+        peer.setDiscoveryMode(discoveryMode);
+    }
+
+    private boolean removePeer(final Peer peer) {
+        if (!peers.remove(peer)) {
+            return false;
+        }
+
+        peersBySession.remove(peer.getSession().getId(), peer);
+
+        if (peer.getPeerId() != null) {
+            peersById.remove(peer.getPeerId(), peer);
+        }
+
+        reaper.untrack(peer);
+        registryStats.peerDisconnected(peer);
+        networkIndex.remove(peer);
+        shards.execute(peer.getSession(), () -> iceServerService.release(peer));
+        return true;
     }
 
     private void unconnectPeer(final WebSocketSession session) {
         final Peer peer = findPeerBySession(session);
-        peers.remove(peer);
+
+        if (peer == null) {
+            return;
+        }
+
+        if (!removePeer(peer)) {
+            return;
+        }
+
         unconnectPeerInNetwork(peer);
-        log.info("Peer ID {} disconnected", peer.getPeerId());
+        commitDisconnectEvent(peer, PeerDisconnectEvent.CLOSED);
+
+        if (logSampler.sample(LogSampler.Event.DISCONNECT)) {
+            log.info("Peer ID {} disconnected", peer.getPeerId());
+        }
+    }
+
+    private static void commitDisconnectEvent(
+            final Peer peer,
+            final String reason
+    ) {
+        final PeerDisconnectEvent event = new PeerDisconnectEvent();
+
+        if (event.shouldCommit()) {
+            event.peerId = String.valueOf(peer.getPeerId());
+            event.reason = reason;
+            event.commit();
+        }
+    }
+
+    /**
+     * Drop peers whose sessions are idle, half-open or broken. Neighbours are
+     * looked up once per network group and notified about all evicted peers of
+     * that group together.
+     *
+     * @param evicted peers to remove from the registry
+     */
+    private void evictPeers(final List<Peer> evicted) {
+        final Map<NetworkGroup, List<Peer>> groups = new HashMap<>();
+
+        for (Peer peer : evicted) {
+            if (!removePeer(peer)) {
+                continue;
+            }
+
+            groups.computeIfAbsent(peer.getNetwork(), network -> new ArrayList<>()).add(peer);
+            commitDisconnectEvent(peer, PeerDisconnectEvent.EVICTED);
+
+            closeSession(peer, CloseStatus.SESSION_NOT_RELIABLE);
+        }
+
+        for (List<Peer> group : groups.values()) {
+            for (Peer neighbour : findPeersInNetwork(group.getFirst())) {
+                for (Peer peer : group) {
+                    if (peer.getPeerId() != null) {
+                        broadcast(neighbour, new PeerDisconnectResponse(peer.getPeerId()));
+                    }
+                }
+            }
+        }
+    }
+
+    private void closeSession(
+            final Peer peer,
+            final CloseStatus status
+    ) {
+        shards.execute(peer.getSession(), () -> {
+            try {
+                shards.writerOf(peer.getSession()).close(status);
+            } catch (IOException e) {
+                log.debug("Session of peer ID {} was already gone", peer.getPeerId());
+            }
+        });
     }
 
     private void handleChangeSettings(
@@ -129,11 +523,79 @@ public class WebSocketHandler extends TextWebSocketHandler {
     ) {
         final PeerChangeSettingsRequest data = new ObjectMapper().convertValue(payload.getData(), PeerChangeSettingsRequest.class);
         peer.setName(data.getName());
-        peer.setDiscoveryMode(data.getDiscoveryMode());
+        changeDiscoveryMode(peer, data.getDiscoveryMode());
+        scheduleSettingsUpdate(peer);
+    }
+
+    /**
+     * Announce settings once the peer stopped changing them for
+     * {@code aircloud.settings.debounce} milliseconds. Every peer has at most
+     * one update scheduled, later changes only push its deadline back.
+     */
+    private void scheduleSettingsUpdate(final Peer peer) {
+        peer.setSettingsChangedAt(System.nanoTime());
+
+        if (peer.getSettingsUpdatePending().compareAndSet(false, true)) {
+            scheduler.schedule(() -> flushSettingsUpdate(peer), SETTINGS_DEBOUNCE, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void flushSettingsUpdate(final Peer peer) {
+        final long quiet = System.nanoTime() - peer.getSettingsChangedAt();
+        final long remaining = TimeUnit.MILLISECONDS.toNanos(SETTINGS_DEBOUNCE) - quiet;
+
+        if (remaining > 0) {
+            scheduler.schedule(() -> flushSettingsUpdate(peer), remaining, TimeUnit.NANOSECONDS);
+            return;
+        }
+
+        shards.execute(peer.getSession(), () -> {
+            peer.getSettingsUpdatePending().set(false);
+
+            try {
+                announceSettings(peer);
+            } catch (RuntimeException e) {
+                log.warn("Failed to announce settings of peer ID {}", peer.getPeerId(), e);
+            }
+        });
+    }
+
+    /**
+     * Send one update for everything that changed since the last
+     * announcement. A peer switching to NETWORK is discovered by its group, a
+     * peer switching to DIRECT leaves it and a renamed NETWORK peer is renamed
+     * for its neighbours. The group's discoverable set changes here too, so it
+     * always matches what the neighbours were told.
+     */
+    private void announceSettings(final Peer peer) {
+        if (!peers.contains(peer) || peer.getPeerId() == null) {
+            return;
+        }
+
+        final DiscoveryMode announced = peer.getAnnouncedDiscoveryMode();
+        final String announcedName = peer.getAnnouncedName();
+        final DiscoveryMode discoveryMode = peer.getDiscoveryMode();
+
+        peer.setAnnouncedDiscoveryMode(discoveryMode);
+        peer.setAnnouncedName(peer.getName());
+        networkIndex.discoveryModeAnnounced(peer);
+
+        if (announced != DiscoveryMode.NETWORK && discoveryMode == DiscoveryMode.NETWORK) {
+            handlePeerConnection(peer);
+        } else if (announced == DiscoveryMode.NETWORK && discoveryMode != DiscoveryMode.NETWORK) {
+            unconnectPeerInNetwork(peer);
+        } else if (discoveryMode == DiscoveryMode.NETWORK && !Objects.equals(announcedName, peer.getName())) {
+            final PeerUpdateResponse update = new PeerUpdateResponse(peer.getPeerId(), peer.getName());
+
+            for (Peer neighbour : findPeersInNetwork(peer)) {
+                broadcast(neighbour, update);
+            }
+        }
     }
 
     private void handlePeerConnect(
             final WebSocketSession session,
+            final Peer peerB,
             final BaseRequest payload
     ) {
         final ConnectPeerRequest data = new ObjectMapper().convertValue(payload.getData(), ConnectPeerRequest.class);
@@ -141,128 +603,328 @@ public class WebSocketHandler extends TextWebSocketHandler {
         final Peer peerA = findPeerByConnectionId(connectionId);
 
         if (peerA != null) {
-            final Peer peerB = findPeerBySession(session);
             establishConnectionBetweenPeers(peerA, peerB, DiscoveryMode.DIRECT);
-            sendMessage(session, new PeerManualConnectResponse(peerA.getPeerId(), true));
+            sendMessage(peerB, new PeerManualConnectResponse(peerA.getPeerId(), true));
         } else {
-            sendMessage(session, new PeerManualConnectResponse(null, false));
+            sendMessage(peerB, new PeerManualConnectResponse(null, false));
         }
     }
 
-    private void handlePeerReconnect(WebSocketSession session, BaseRequest payload) {
+    private void handlePeerReconnect(Peer peerB, BaseRequest payload) {
         final ReconnectPeerRequest data = new ObjectMapper().convertValue(payload.getData(), ReconnectPeerRequest.class);
         final Peer peerA = findPeerById(data.getPeerId());
 
         if (peerA != null) {
-            final Peer peerB = findPeerBySession(session);
             establishConnectionBetweenPeers(peerA, peerB, DiscoveryMode.DIRECT);
         }
     }
 
-    private void handleIceCandidate(WebSocketSession session, BaseRequest payload) {
+    /**
+     * Forward an OFFER, ANSWER or ICE_CANDIDATE without parsing the SDP or the
+     * candidate, see {@link RelayFrame}. Candidates rejected by the
+     * {@link CandidateFilter} are dropped before the target is looked up,
+     * offers and answers are minimized by the {@link SdpMinimizer} if enabled.
+     *
+     * @param sender   peer who sent the frame
+     * @param relay    scanned frame
+     * @param received {@link System#nanoTime()} when the frame arrived
+     */
+    private void relayMessage(
+            final Peer sender,
+            final RelayFrame relay,
+            final long received
+    ) {
+        if (relay.getType() == RequestType.ICE_CANDIDATE
+                && !candidates.admit(sender.getPeerId(), relay.getPeerId(), relay.getFrame(), relay.getOpaqueStart(), relay.getOpaqueEnd())) {
+            return;
+        }
+
+        final RelayEvent event = new RelayEvent();
+        final long started = System.nanoTime();
+        event.begin();
+
+        final Peer target = findPeerById(relay.getPeerId());
+
+        if (target != null) {
+            final String opaque = sdpMinimizer.isEnabled() && relay.getType() != RequestType.ICE_CANDIDATE
+                    ? sdpMinimizer.minimize(relay.getFrame(), relay.getOpaqueStart(), relay.getOpaqueEnd())
+                    : null;
+
+            overload.flushDeferred(target, deferredSender);
+            sendText(target.getSession(), RelayEnvelope.encode(sender, relay, opaque));
+            negotiations.relayed(sender.getPeerId(), target.getPeerId(), relay.getType());
+        }
+
+        if (event.shouldCommit()) {
+            commitRelay(event, relay.getType(), relay.getOpaqueLength(), started - received, target != null);
+        }
+    }
+
+    /**
+     * Commit the event of a relayed OFFER, ANSWER or ICE_CANDIDATE, whether it
+     * took the streaming path or the DTO fallback.
+     *
+     * @param size      length of the relayed SDP or candidate
+     * @param queueTime time from receiving the frame until relaying started
+     * @param delivered whether the target peer was found
+     */
+    private static void commitRelay(
+            final RelayEvent event,
+            final RequestType type,
+            final int size,
+            final long queueTime,
+            final boolean delivered
+    ) {
+        event.type = type.name();
+        event.size = size;
+        event.queueTime = queueTime;
+        event.delivered = delivered;
+        event.commit();
+    }
+
+    private void handleIceCandidate(
+            final Peer peerB,
+            final BaseRequest payload,
+            final long received
+    ) {
         final IceCandidateRequest data = new ObjectMapper().convertValue(payload.getData(), IceCandidateRequest.class);
+
+        if (data.getCandidate() != null && !candidates.admit(peerB.getPeerId(), data.getPeerId(), data.getCandidate().toString())) {
+            return;
+        }
+
+        final RelayEvent event = new RelayEvent();
+        final long started = System.nanoTime();
+        event.begin();
+
         final Peer peerA = findPeerById(data.getPeerId());
 
         if (peerA != null) {
-            final Peer peerB = findPeerBySession(session);
-            sendMessage(peerA.getSession(), new IceCandidateResponse(peerB.getPeerId(), data.getCandidate()));
+            sendMessage(peerA, new IceCandidateResponse(peerB.getPeerId(), data.getCandidate()));
+        }
+
+        if (event.shouldCommit()) {
+            commitRelay(event, RequestType.ICE_CANDIDATE, sizeOf(data.getCandidate()), started - received, peerA != null);
         }
     }
 
-    private void handleEndOfIceCandidates(WebSocketSession session, BaseRequest payload) {
+    private void handleEndOfIceCandidates(Peer peerB, BaseRequest payload) {
         final EndOfIceCandidateRequest data = new ObjectMapper().convertValue(payload.getData(), EndOfIceCandidateRequest.class);
         final Peer peerA = findPeerById(data.getPeerId());
 
         if (peerA != null) {
-            final Peer peerB = findPeerBySession(session);
-            sendMessage(peerA.getSession(), new EndOfIceCandidatesResponse(peerB.getPeerId()));
+            sendMessage(peerA, new EndOfIceCandidatesResponse(peerB.getPeerId()));
+            negotiations.endOfCandidates(peerB.getPeerId(), peerA.getPeerId());
         }
     }
 
     private void handleAnswer(
             final Peer peerA,
-            final BaseRequest payload
+            final BaseRequest payload,
+            final long received
     ) {
         final RTCAnswerRequest data = new ObjectMapper().convertValue(payload.getData(), RTCAnswerRequest.class);
+        final RelayEvent event = new RelayEvent();
+        final long started = System.nanoTime();
+        event.begin();
+
         final Peer peerB = findPeerById(data.getPeerId());
 
         if (peerB != null) {
-            sendMessage(peerB.getSession(), new RTCApproveAnswerResponse(
+            sendMessage(peerB, new RTCApproveAnswerResponse(
                     peerA.getPeerId(),
-                    data.getAnswer())
+                    minimizeDescription(data.getAnswer()))
             );
+            negotiations.relayed(peerA.getPeerId(), peerB.getPeerId(), RequestType.ANSWER);
+        }
+
+        if (event.shouldCommit()) {
+            commitRelay(event, RequestType.ANSWER, sizeOf(data.getAnswer()), started - received, peerB != null);
         }
     }
 
     private void handleOffer(
             final Peer peerA,
-            final BaseRequest payload
+            final BaseRequest payload,
+            final long received
     ) {
         final RTCOfferRequest data = new ObjectMapper().convertValue(payload.getData(), RTCOfferRequest.class);
+        final RelayEvent event = new RelayEvent();
+        final long started = System.nanoTime();
+        event.begin();
+
         final Peer peerB = findPeerById(data.getPeerId());
 
         if (peerB != null) {
-            sendMessage(peerB.getSession(), new RTCAnswerResponse(
+            sendMessage(peerB, new RTCAnswerResponse(
                     peerA.getPeerId(),
-                    data.getOffer(),
+                    minimizeDescription(data.getOffer()),
                     peerA.getName(),
                     peerA.getDevice(),
                     data.getDiscoveryMode()
             ));
+            negotiations.relayed(peerA.getPeerId(), peerB.getPeerId(), RequestType.OFFER);
         }
+
+        if (event.shouldCommit()) {
+            commitRelay(event, RequestType.OFFER, sizeOf(data.getOffer()), started - received, peerB != null);
+        }
+    }
+
+    /**
+     * @return length of a parsed SDP or candidate as JSON, as the streaming
+     * path measures it
+     */
+    private static int sizeOf(final JsonNode opaque) {
+        return opaque != null ? opaque.toString().length() : 0;
     }
 
+    /**
+     * Minimize the SDP of a parsed offer or answer, see {@link SdpMinimizer}.
+     *
+     * @param description offer or answer as sent by the peer
+     * @return the description to relay
+     */
+    private JsonNode minimizeDescription(final JsonNode description) {
+        if (!sdpMinimizer.isEnabled() || !(description instanceof ObjectNode object) || !object.path("sdp").isTextual()) {
+            return description;
+        }
+
+        final String minimized = SdpMinimizer.minimizeSdp(object.get("sdp").asText());
+
+        if (minimized != null) {
+            object.put("sdp", minimized);
+        }
+
+        return object;
+    }
+
+    /**
+     * Identify the peer, either from the CONNECT message or from the
+     * parameters of the WebSocket upgrade.
+     *
+     * @param session unique WebSocket session
+     * @param peer    peer of the session
+     * @param data      name, discovery mode and optional auth token of the peer
+     * @param handshake whether the request came with the WebSocket upgrade
+     */
     private void handleConnect(
             final WebSocketSession session,
             final Peer peer,
-            final BaseRequest payload
+            final PeerConnectRequest data,
+            final boolean handshake
     ) throws Exception {
-        final PeerConnectRequest data = new ObjectMapper().convertValue(payload.getData(), PeerConnectRequest.class);
+        final Peer owner = findTokenOwner(data.getAuthToken());
+        boolean restored = false;
 
-        if (data.getAuthToken() != null && JwtService.verifyAuthToken(data.getAuthToken(), peer.getPrivateKey())) {
-            final Auth authClaims = JwtService.parseAuth(data.getAuthToken(), peer.getPrivateKey());
-            peer.setPeerId(authClaims.getPeerId());
-            peer.setConnectionId(authClaims.getConnectionId());
-        } else {
+        if (owner != null) {
+            final Auth authClaims = JwtService.parseAuth(data.getAuthToken(), owner.getPrivateKey());
+            restored = owner == peer || takeOver(owner, peer);
+
+            if (restored) {
+                peer.setConnectionId(authClaims.getConnectionId());
+            }
+        }
+
+        if (!restored) {
             if (peer.getConnectionId() == null) {
                 peer.setConnectionId(ConnectionIdGenerator.generateConnectionId(6, peers));
             }
 
             if (peer.getPeerId() == null) {
                 peer.setPeerId(UUID.randomUUID());
+                peersById.put(peer.getPeerId(), peer);
             }
         }
 
         peer.setName(data.getName());
-        peer.setDiscoveryMode(data.getDiscoveryMode());
-        peer.renewPrivateKey();
+        changeDiscoveryMode(peer, data.getDiscoveryMode());
+        peer.setAnnouncedName(peer.getName());
+        peer.setAnnouncedDiscoveryMode(peer.getDiscoveryMode());
+        networkIndex.discoveryModeAnnounced(peer);
+        iceServerService.assign(session, peer);
+
+        final String token = issueAuthToken(peer);
+
+        sendMessage(session, new PeerConnectResponse(token, peer.getPeerId(), peer.getConnectionId(), peer.getIceServers()));
+
+        if (logSampler.sample(LogSampler.Event.CONNECT)) {
+            log.info("Peer ID {} connected", peer.getPeerId());
+        }
+
+        capture.identified(session, peer);
 
-        final String token = JwtService.issueAuthToken(peer.getPeerId(), peer.getConnectionId(), peer.getPrivateKey());
+        final PeerConnectEvent event = new PeerConnectEvent();
 
-        sendMessage(session, new PeerConnectResponse(token, peer.getPeerId(), peer.getConnectionId(), generateIceServers(session)));
-        log.info("Peer ID {} connected", peer.getPeerId());
+        if (event.shouldCommit()) {
+            event.peerId = peer.getPeerId().toString();
+            event.discoveryMode = String.valueOf(peer.getDiscoveryMode());
+            event.restored = restored;
+            event.handshake = handshake;
+            event.commit();
+        }
 
         handlePeerConnection(peer);
     }
 
-    private List<IceServer> generateIceServers(
-            final WebSocketSession session
-    ) throws Exception {
-        final TurnCredentialService.EphemeralCredentials credentials = TurnCredentialService.generate(session.getId(), 3600);
+    /**
+     * Tokens are signed with the private key of the peer they were issued to,
+     * so a token is only valid while that peer is still registered and has not
+     * been issued a newer token.
+     *
+     * @param authToken token sent with CONNECT, may be null
+     * @return registered peer the token belongs to, null if the token is not valid
+     */
+    private Peer findTokenOwner(final String authToken) {
+        if (authToken == null) {
+            return null;
+        }
+
+        final Peer owner = findPeerById(JwtService.peekPeerId(authToken));
 
-        if (credentials == null) {
+        if (owner == null || !JwtService.verifyAuthToken(authToken, owner.getPrivateKey())) {
             return null;
         }
 
-        final IceServer stun = new IceServer();
-        stun.setUrls(STUN_IP);
+        return owner;
+    }
 
-        final IceServer turn = new IceServer();
-        turn.setUrls(TURN_IP);
-        turn.setUsername(credentials.username());
-        turn.setCredential(credentials.credential());
+    /**
+     * Let a newer session take over the peer ID of a registered peer, e.g. a
+     * client that reconnected before its old socket timed out or a duplicated
+     * tab. The ID is swapped atomically, deferred broadcasts follow it to the
+     * new session and the stale session is closed. Neighbours keep talking to
+     * the same peer ID, so they are not told about a disconnect.
+     *
+     * @param previous peer the token was issued to
+     * @param peer     peer of the new session
+     * @return false if another session took over the peer ID first
+     */
+    private boolean takeOver(
+            final Peer previous,
+            final Peer peer
+    ) {
+        final UUID peerId = previous.getPeerId();
+        final UUID ownPeerId = peer.getPeerId();
 
-        return Arrays.asList(stun, turn);
+        if (!peersById.replace(peerId, previous, peer)) {
+            return false;
+        }
+
+        if (ownPeerId != null && !ownPeerId.equals(peerId)) {
+            peersById.remove(ownPeerId, peer);
+        }
+
+        peer.setPeerId(peerId);
+
+        if (removePeer(previous)) {
+            overload.transferDeferred(previous, peer);
+            commitDisconnectEvent(previous, PeerDisconnectEvent.TAKEN_OVER);
+            closeSession(previous, SESSION_TAKEN_OVER);
+            log.info("Peer ID {} taken over by session {}", peerId, peer.getSession().getId());
+        }
+
+        return true;
     }
 
     private Peer findPeerByConnectionId(
@@ -274,18 +936,104 @@ public class WebSocketHandler extends TextWebSocketHandler {
                 .orElse(null);
     }
 
+    /**
+     * Send a response to a peer after the broadcasts deferred for it.
+     *
+     * @param target  receiving peer
+     * @param message response to send
+     */
+    private void sendMessage(
+            final Peer target,
+            final Object message
+    ) {
+        overload.flushDeferred(target, deferredSender);
+        sendMessage(target.getSession(), message);
+    }
+
+    /**
+     * Send a response, encoded from its template if it has one, see
+     * {@link ResponseTemplates}.
+     *
+     * @param session receiving WebSocket session
+     * @param message response to send
+     */
     private void sendMessage(
             final WebSocketSession session,
             final Object message
     ) {
+        final String encoded = ResponseTemplates.encode(message);
+
+        if (encoded != null) {
+            sendText(session, encoded);
+            return;
+        }
+
         try {
+            sendText(session, new ObjectMapper().writeValueAsString(message));
+        } catch (IOException e) {
+            throw new RuntimeException("Can't serialize the message", e);
+        }
+    }
+
+    /**
+     * Write to the session. Sharded sessions are written through their
+     * bounded writer from any thread, see {@link ShardExecutor}, otherwise
+     * writers take turns on the session.
+     *
+     * @param session receiving WebSocket session
+     * @param payload encoded response
+     */
+    private void sendText(
+            final WebSocketSession session,
+            final String payload
+    ) {
+        if (shards.isEnabled()) {
+            writeText(shards.writerOf(session), payload);
+        } else {
             synchronized (session) {
-                if (session.isOpen()) {
-                    session.sendMessage(new TextMessage(new ObjectMapper().writeValueAsString(message)));
-                }
+                writeText(session, payload);
+            }
+        }
+    }
+
+    private void writeText(
+            final WebSocketSession session,
+            final String payload
+    ) {
+        final long started = System.nanoTime();
+
+        try {
+            if (session.isOpen()) {
+                session.sendMessage(new TextMessage(payload));
             }
         } catch (IOException e) {
             throw new RuntimeException("Can't send the message due to disconnection");
+        } catch (SessionLimitExceededException e) {
+            log.info("Closing session {}: {}", session.getId(), e.getMessage());
+
+            try {
+                session.close(e.getStatus());
+            } catch (IOException closeFailure) {
+                log.debug("Session {} was already gone", session.getId());
+            }
+        } finally {
+            overload.recordSendLatency(System.nanoTime() - started);
+        }
+    }
+
+    /**
+     * Send a best-effort network discovery message, which may be deferred or
+     * dropped while the server is overloaded.
+     *
+     * @param target  peer to notify
+     * @param message response to send
+     */
+    private void broadcast(
+            final Peer target,
+            final Object message
+    ) {
+        if (overload.admitBroadcast(target, message)) {
+            sendMessage(target, message);
         }
     }
 
@@ -298,9 +1046,7 @@ public class WebSocketHandler extends TextWebSocketHandler {
     }
 
     private List<Peer> findPeersInNetwork(final Peer peer) {
-        return peers.stream()
-                .filter(p -> p.getDiscoveryMode().equals(DiscoveryMode.NETWORK))
-                .filter(p -> Objects.equals(p.getIpAddress(), peer.getIpAddress()))
+        return peer.getNetwork().getDiscoverable().stream()
                 .filter(p -> !p.equals(peer))
                 .filter(Peer::isActive)
                 .toList();
@@ -308,7 +1054,7 @@ public class WebSocketHandler extends TextWebSocketHandler {
 
     private void unconnectPeerInNetwork(final Peer peer) {
         for (Peer p : findPeersInNetwork(peer)) {
-            sendMessage(p.getSession(), new PeerDisconnectResponse(peer.getPeerId()));
+            broadcast(p, new PeerDisconnectResponse(peer.getPeerId()));
         }
     }
 
@@ -318,22 +1064,29 @@ public class WebSocketHandler extends TextWebSocketHandler {
             final DiscoveryMode discoveryMode
     ) {
         if (!peerA.equals(peerB)) {
-            log.info("Peer-A ID {} and peer-B ID {} connected through {} connection", peerA.getPeerId(), peerB.getPeerId(), discoveryMode);
-            sendMessage(peerA.getSession(), new RTCOfferResponse(peerB.getPeerId(), peerB.getName(), peerB.getDevice(), discoveryMode));
+            if (logSampler.sample(LogSampler.Event.DISCOVERY)) {
+                log.info("Peer-A ID {} and peer-B ID {} connected through {} connection", peerA.getPeerId(), peerB.getPeerId(), discoveryMode);
+            }
+
+            final RTCOfferResponse offer = new RTCOfferResponse(peerB.getPeerId(), peerB.getName(), peerB.getDevice(), discoveryMode);
+
+            if (discoveryMode == DiscoveryMode.NETWORK) {
+                broadcast(peerA, offer);
+            } else {
+                sendMessage(peerA, offer);
+            }
+
+            negotiations.started(peerA.getPeerId(), peerB.getPeerId(), discoveryMode);
+            candidates.reset(peerA.getPeerId(), peerB.getPeerId());
         }
     }
 
     private Peer findPeerBySession(final WebSocketSession session) {
-        return peers.stream()
-                .filter(peer -> peer.getSession().equals(session))
-                .findFirst()
-                .orElse(null);
+        return peersBySession.get(session.getId());
     }
 
     private Peer findPeerById(final UUID peerId) {
-        return peers.stream()
-                .filter(p -> p.getPeerId() != null && p.getPeerId().equals(peerId)).findFirst()
-                .orElse(null);
+        return peerId != null ? peersById.get(peerId) : null;
     }
 
 }
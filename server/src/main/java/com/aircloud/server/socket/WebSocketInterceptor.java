@@ -1,16 +1,43 @@
 package com.aircloud.server.socket;
 
+import com.aircloud.server.network.ClientAddressResolver;
+import com.aircloud.server.socket.dto.request.PeerConnectRequest;
 import jakarta.servlet.http.HttpServletRequest;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.server.ServerHttpRequest;
 import org.springframework.http.server.ServerHttpResponse;
 import org.springframework.http.server.ServletServerHttpRequest;
+import org.springframework.http.server.ServletServerHttpResponse;
 import org.springframework.web.socket.WebSocketHandler;
 import org.springframework.web.socket.server.HandshakeInterceptor;
 
 import java.util.Map;
 
+@Log4j2
 public class WebSocketInterceptor implements HandshakeInterceptor {
 
+    /**
+     * Session attribute holding the CONNECT request passed as query parameters
+     * of the upgrade, see {@link #readConnectRequest(HttpServletRequest)}.
+     */
+    public final static String CONNECT_REQUEST_ATTRIBUTE = "connectRequest";
+
+    /**
+     * Request attribute holding the client address the connection slot was
+     * reserved for, so the slot of a failed upgrade is given back to it.
+     */
+    private final static String CLIENT_ADDRESS_ATTRIBUTE = "aircloud.clientAddress";
+
+    private final AdmissionController admission;
+
+    private final ClientAddressResolver clientAddresses;
+
+    public WebSocketInterceptor(AdmissionController admission, ClientAddressResolver clientAddresses) {
+        this.admission = admission;
+        this.clientAddresses = clientAddresses;
+    }
+
     @Override
     public boolean beforeHandshake(
             final ServerHttpRequest request,
@@ -22,18 +49,25 @@ public class WebSocketInterceptor implements HandshakeInterceptor {
             final HttpServletRequest httpRequest = servletRequest.getServletRequest();
 
             final String userAgent = httpRequest.getHeader("user-agent");
-            String ipAddress;
-
-            if (httpRequest.getHeader("cf-connecting-ip") != null) {
-                ipAddress = httpRequest.getHeader("cf-connecting-ip");
-            } else if (httpRequest.getHeader("x-forwarded-for") != null) {
-                ipAddress = httpRequest.getHeader("x-forwarded-for");
-            } else {
-                ipAddress = httpRequest.getRemoteAddr();
+            final String ipAddress = resolveIpAddress(httpRequest);
+            final AdmissionController.Rejection rejection = admission.admit(ipAddress);
+
+            if (rejection != null) {
+                response.setStatusCode(rejection.getStatus());
+                response.getHeaders().set("Retry-After", String.valueOf(admission.getRetryAfter()));
+                return false;
             }
 
+            httpRequest.setAttribute(CLIENT_ADDRESS_ATTRIBUTE, ipAddress);
             attributes.put("userAgent", userAgent);
             attributes.put("ipAddress", ipAddress);
+            attributes.put(AdmissionController.ADMITTED_ATTRIBUTE, true);
+
+            final PeerConnectRequest connectRequest = readConnectRequest(httpRequest);
+
+            if (connectRequest != null) {
+                attributes.put(CONNECT_REQUEST_ATTRIBUTE, connectRequest);
+            }
         }
 
         return true;
@@ -46,5 +80,56 @@ public class WebSocketInterceptor implements HandshakeInterceptor {
             final WebSocketHandler wsHandler,
             final Exception exception
     ) {
+        if (request instanceof ServletServerHttpRequest servletRequest) {
+            admission.handshakeCompleted();
+
+            final boolean upgraded = response instanceof ServletServerHttpResponse servletResponse
+                    && servletResponse.getServletResponse().getStatus() == HttpStatus.SWITCHING_PROTOCOLS.value();
+
+            if (exception != null || !upgraded) {
+                admission.connectionClosed((String) servletRequest.getServletRequest().getAttribute(CLIENT_ADDRESS_ATTRIBUTE));
+            }
+        }
+    }
+
+    /**
+     * A client may pass {@code name} and {@code discoveryMode} with the
+     * upgrade request instead of sending CONNECT once the socket is open,
+     * saving a round trip before it is discoverable. An auth token is enough
+     * to take over a session, so it is never read from the URL, where proxies
+     * and access logs keep it. A client restoring its session sends CONNECT
+     * with the token instead.
+     *
+     * @return the request, or null if the client will send CONNECT itself
+     */
+    private PeerConnectRequest readConnectRequest(final HttpServletRequest httpRequest) {
+        final String discoveryMode = httpRequest.getParameter("discoveryMode");
+
+        if (discoveryMode == null) {
+            return null;
+        }
+
+        try {
+            final PeerConnectRequest connectRequest = new PeerConnectRequest();
+            connectRequest.setName(httpRequest.getParameter("name"));
+            connectRequest.setDiscoveryMode(DiscoveryMode.valueOf(discoveryMode));
+            return connectRequest;
+        } catch (IllegalArgumentException e) {
+            log.debug("Ignoring handshake CONNECT with discovery mode '{}'", discoveryMode);
+            return null;
+        }
     }
+
+    /**
+     * The client IP header is only believed when a trusted proxy sent it,
+     * see {@link ClientAddressResolver}. Otherwise a client could pick any
+     * address, join another network group and dodge the per-IP admission
+     * limits, and clients behind an untrusted proxy would share one limit.
+     * Admission, the network group and the release of the connection slot
+     * all use this one address.
+     */
+    private String resolveIpAddress(final HttpServletRequest httpRequest) {
+        return clientAddresses.resolve(httpRequest);
+    }
+
 }
@@ -14,5 +14,6 @@ public enum RequestType {
     ANSWER,
     ICE_CANDIDATE,
     END_OF_ICE_CANDIDATES,
+    BATCH,
 
 }
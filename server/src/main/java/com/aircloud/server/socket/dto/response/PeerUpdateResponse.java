@@ -0,0 +1,23 @@
+package com.aircloud.server.socket.dto.response;
+
+import lombok.Getter;
+import lombok.Setter;
+
+import java.util.UUID;
+
+@Getter
+@Setter
+public class PeerUpdateResponse {
+
+    private ResponseType type = ResponseType.PEER_UPDATE;
+
+    private UUID peerId;
+
+    private String name;
+
+    public PeerUpdateResponse(UUID peerId, String name) {
+        this.peerId = peerId;
+        this.name = name;
+    }
+
+}
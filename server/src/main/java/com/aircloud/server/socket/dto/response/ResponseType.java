@@ -13,6 +13,7 @@ public enum ResponseType {
     PEER_CONNECT,
     ICE_CANDIDATE,
     END_OF_ICE_CANDIDATES,
-    PING_PONG
+    PING_PONG,
+    PEER_UPDATE
 
 }
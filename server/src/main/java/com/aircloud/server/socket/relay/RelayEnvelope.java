@@ -0,0 +1,88 @@
+package com.aircloud.server.socket.relay;
+
+import com.aircloud.server.socket.Peer;
+import com.aircloud.server.socket.dto.request.RequestType;
+
+import static com.aircloud.server.socket.template.ResponseTemplates.*;
+
+/**
+ * Encodes relayed messages around the raw opaque payload of a {@link RelayFrame}.
+ * <p>
+ * The produced JSON is equal to serializing {@code RTCAnswerResponse},
+ * {@code RTCApproveAnswerResponse} and {@code IceCandidateResponse}, but the
+ * SDP or candidate is copied verbatim, so it is never re-escaped. Envelopes
+ * are built in the sending thread's builder of {@code ResponseTemplates}.
+ */
+public class RelayEnvelope {
+
+    private static final String ANSWER_PREFIX = "{\"type\":\"ANSWER\",\"peerId\":";
+    private static final String APPROVE_ANSWER_PREFIX = "{\"type\":\"APPROVE_ANSWER\",\"peerId\":";
+    private static final String ICE_CANDIDATE_PREFIX = "{\"type\":\"ICE_CANDIDATE\",\"peerId\":";
+
+    /**
+     * Room for the envelope itself, so the builder never has to grow.
+     */
+    private static final int ENVELOPE_CAPACITY = 192;
+
+    public static String encode(
+            final Peer sender,
+            final RelayFrame frame
+    ) {
+        return encode(sender, frame, null);
+    }
+
+    /**
+     * @param opaque replacement of the opaque payload of the frame, null to
+     *               relay it as received
+     */
+    public static String encode(
+            final Peer sender,
+            final RelayFrame frame,
+            final String opaque
+    ) {
+        final StringBuilder sb = acquire((opaque != null ? opaque.length() : frame.getOpaqueLength()) + ENVELOPE_CAPACITY);
+
+        switch (frame.getType()) {
+            case RequestType.OFFER -> {
+                sb.append(ANSWER_PREFIX);
+                appendUuid(sb, sender.getPeerId());
+                sb.append(",\"offer\":");
+                appendOpaque(sb, frame, opaque);
+                sb.append(",\"name\":");
+                appendString(sb, sender.getName());
+                sb.append(",\"device\":");
+                appendString(sb, sender.getDevice());
+                sb.append(",\"discoveryMode\":");
+                appendString(sb, frame.getDiscoveryMode() != null ? frame.getDiscoveryMode().name() : null);
+            }
+            case RequestType.ANSWER -> {
+                sb.append(APPROVE_ANSWER_PREFIX);
+                appendUuid(sb, sender.getPeerId());
+                sb.append(",\"answer\":");
+                appendOpaque(sb, frame, opaque);
+            }
+            case RequestType.ICE_CANDIDATE -> {
+                sb.append(ICE_CANDIDATE_PREFIX);
+                appendUuid(sb, sender.getPeerId());
+                sb.append(",\"candidate\":");
+                appendOpaque(sb, frame, opaque);
+            }
+            default -> throw new IllegalArgumentException("Not a relayable request type " + frame.getType());
+        }
+
+        return release(sb.append('}'));
+    }
+
+    private static void appendOpaque(
+            final StringBuilder sb,
+            final RelayFrame frame,
+            final String opaque
+    ) {
+        if (opaque != null) {
+            sb.append(opaque);
+        } else {
+            sb.append(frame.getFrame(), frame.getOpaqueStart(), frame.getOpaqueEnd());
+        }
+    }
+
+}
@@ -0,0 +1,247 @@
+package com.aircloud.server.socket.relay;
+
+import com.aircloud.server.socket.DiscoveryMode;
+import com.aircloud.server.socket.dto.request.BaseRequest;
+import com.aircloud.server.socket.dto.request.RequestType;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.Getter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Streaming view of one inbound request within a frame.
+ * <p>
+ * The server never looks inside the SDP or the candidate, so instead of
+ * materializing them as a {@code JsonNode} only their character range within
+ * the original frame is remembered. {@link RelayEnvelope} splices that range
+ * into the outbound message as is. The data of requests that are not relayed
+ * is read into a tree during the same scan, so they become a
+ * {@code BaseRequest} without parsing the frame again.
+ * <p>
+ * A request of a type the server does not know, or with a malformed peer ID
+ * or discovery mode, is scanned as invalid. In a BATCH only that request is
+ * invalid, the others are kept.
+ */
+@Getter
+public class RelayFrame {
+
+    private static final JsonFactory FACTORY = new JsonFactory();
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final String frame;
+
+    private RequestType type;
+
+    private String token;
+
+    /**
+     * Data of a request that is not relayed, null if it was not read as a
+     * tree during the scan.
+     */
+    private JsonNode data;
+
+    private UUID peerId;
+
+    private DiscoveryMode discoveryMode;
+
+    private int messageStart = -1;
+
+    private int messageEnd = -1;
+
+    private int opaqueStart = -1;
+
+    private int opaqueEnd = -1;
+
+    /**
+     * Whether the data was scanned without building a tree.
+     */
+    private boolean dataScanned;
+
+    private boolean valid = true;
+
+    private boolean batched;
+
+    private RelayFrame(String frame) {
+        this.frame = frame;
+    }
+
+    /**
+     * Scan a frame once without building a tree.
+     *
+     * @param frame raw text payload of the WebSocket message
+     * @return the request of the frame, or the requests of a BATCH frame in
+     * order, or null if the frame is not a JSON object and must go through
+     * the regular request path
+     */
+    public static List<RelayFrame> parseAll(final String frame) {
+        try (JsonParser parser = FACTORY.createParser(frame)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                return null;
+            }
+
+            final List<RelayFrame> batch = new ArrayList<>();
+            final RelayFrame root = scanMessage(frame, parser, batch);
+
+            return root.type == RequestType.BATCH ? batch : List.of(root);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    public static boolean isRelayType(final RequestType type) {
+        return type == RequestType.OFFER || type == RequestType.ANSWER || type == RequestType.ICE_CANDIDATE;
+    }
+
+    public boolean isRelayable() {
+        return valid
+                && isRelayType(type)
+                && peerId != null
+                && opaqueStart >= 0
+                && opaqueEnd <= frame.length()
+                && frame.charAt(opaqueStart) == '{'
+                && frame.charAt(opaqueEnd - 1) == '}';
+    }
+
+    public int getOpaqueLength() {
+        return opaqueEnd - opaqueStart;
+    }
+
+    /**
+     * @return JSON text of this request alone
+     */
+    public String getMessage() {
+        return frame.substring(messageStart, messageEnd);
+    }
+
+    /**
+     * Read this request as a {@code BaseRequest}. Only requests whose data
+     * came before their type, or relay requests that can't be relayed as is,
+     * are parsed again from their message.
+     */
+    public BaseRequest toRequest() throws IOException {
+        if (dataScanned) {
+            return MAPPER.readValue(getMessage(), BaseRequest.class);
+        }
+
+        final BaseRequest request = new BaseRequest();
+        request.setType(type);
+        request.setToken(token);
+        request.setData(data);
+        return request;
+    }
+
+    /**
+     * Scan the object the parser is positioned at.
+     *
+     * @param batch receives the requests of a data array, null for requests
+     *              that are already part of a batch
+     */
+    private static RelayFrame scanMessage(
+            final String frame,
+            final JsonParser parser,
+            final List<RelayFrame> batch
+    ) throws IOException {
+        final RelayFrame message = new RelayFrame(frame);
+        message.messageStart = (int) parser.currentTokenLocation().getCharOffset();
+
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            final String field = parser.currentName();
+            final JsonToken value = parser.nextToken();
+
+            if ("type".equals(field) && value == JsonToken.VALUE_STRING) {
+                message.type = message.parseEnum(RequestType.class, parser.getText());
+            } else if ("token".equals(field) && value == JsonToken.VALUE_STRING) {
+                message.token = parser.getText();
+            } else if ("data".equals(field) && value == JsonToken.START_OBJECT) {
+                if (message.type != null && !isRelayType(message.type)) {
+                    message.data = MAPPER.readTree(parser);
+                } else {
+                    message.parseData(parser);
+                }
+            } else if ("data".equals(field) && value == JsonToken.START_ARRAY && batch != null) {
+                JsonToken element;
+
+                while ((element = parser.nextToken()) != JsonToken.END_ARRAY) {
+                    if (element == null) {
+                        throw new IOException("Unexpected end of batch");
+                    } else if (element == JsonToken.START_OBJECT) {
+                        final RelayFrame request = scanMessage(frame, parser, null);
+                        request.batched = true;
+                        batch.add(request);
+                    } else {
+                        parser.skipChildren();
+                    }
+                }
+            } else {
+                parser.skipChildren();
+            }
+        }
+
+        message.messageEnd = (int) parser.currentTokenLocation().getCharOffset() + 1;
+        return message;
+    }
+
+    private void parseData(final JsonParser parser) throws IOException {
+        dataScanned = true;
+
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            final String field = parser.currentName();
+            final JsonToken value = parser.nextToken();
+
+            switch (field) {
+                case "peerId" -> peerId = value == JsonToken.VALUE_STRING ? parseUuid(parser.getText()) : null;
+                case "discoveryMode" -> discoveryMode = value == JsonToken.VALUE_STRING ? parseEnum(DiscoveryMode.class, parser.getText()) : null;
+                case "offer", "answer", "candidate" -> captureOpaque(parser, value);
+                default -> parser.skipChildren();
+            }
+        }
+    }
+
+    private void captureOpaque(
+            final JsonParser parser,
+            final JsonToken value
+    ) throws IOException {
+        if (value != JsonToken.START_OBJECT) {
+            parser.skipChildren();
+            return;
+        }
+
+        opaqueStart = (int) parser.currentTokenLocation().getCharOffset();
+        parser.skipChildren();
+        opaqueEnd = (int) parser.currentTokenLocation().getCharOffset() + 1;
+    }
+
+    private UUID parseUuid(final String text) {
+        try {
+            return UUID.fromString(text);
+        } catch (IllegalArgumentException e) {
+            valid = false;
+            return null;
+        }
+    }
+
+    /**
+     * @return the constant, null if there is none of that name, which makes
+     * the request invalid
+     */
+    private <E extends Enum<E>> E parseEnum(
+            final Class<E> type,
+            final String name
+    ) {
+        try {
+            return Enum.valueOf(type, name);
+        } catch (IllegalArgumentException e) {
+            valid = false;
+            return null;
+        }
+    }
+
+}
@@ -0,0 +1,218 @@
+package com.aircloud.server.socket.template;
+
+import com.aircloud.server.socket.IceServer;
+import com.aircloud.server.socket.dto.response.*;
+import com.fasterxml.jackson.core.io.JsonStringEncoder;
+
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Hand-written encoders for the responses sent most often.
+ * <p>
+ * The constant head of every message is encoded once, only the peer ID,
+ * token and the like are appended per send, into a builder reused by the
+ * sending thread. The produced JSON is equal to serializing the response with
+ * Jackson, so clients can't tell the difference. An encoded ICE server is
+ * kept on the {@link IceServer}, a peer's servers are encoded once per
+ * assignment instead of on every heartbeat that renews its token.
+ */
+public class ResponseTemplates {
+
+    private static final String PING_PONG_PREFIX = head(ResponseType.PING_PONG, "authToken");
+    private static final String DISCONNECT_PREFIX = head(ResponseType.DISCONNECT, "peerId");
+    private static final String END_OF_ICE_CANDIDATES_PREFIX = head(ResponseType.END_OF_ICE_CANDIDATES, "peerId");
+    private static final String OFFER_PREFIX = head(ResponseType.OFFER, "peerId");
+
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    private static final int INITIAL_CAPACITY = 512;
+
+    /**
+     * Builders that grew past this, for a large SDP, are not kept.
+     */
+    private static final int MAX_POOLED_CAPACITY = 64 * 1024;
+
+    private static final ThreadLocal<StringBuilder> BUFFER = ThreadLocal.withInitial(() -> new StringBuilder(INITIAL_CAPACITY));
+
+    /**
+     * @return the JSON of the response, or null if it has no template and has
+     * to be serialized by Jackson
+     */
+    public static String encode(final Object message) {
+        return switch (message) {
+            case PingPongResponse response -> encode(response);
+            case PeerDisconnectResponse response -> encode(DISCONNECT_PREFIX, response.getPeerId());
+            case EndOfIceCandidatesResponse response -> encode(END_OF_ICE_CANDIDATES_PREFIX, response.getPeerId());
+            case RTCOfferResponse response -> encode(response);
+            default -> null;
+        };
+    }
+
+    private static String encode(final PingPongResponse response) {
+        final StringBuilder sb = acquire(0);
+
+        sb.append(PING_PONG_PREFIX);
+        appendString(sb, response.getAuthToken());
+        sb.append(",\"iceServers\":");
+        appendIceServers(sb, response.getIceServers());
+
+        return release(sb.append('}'));
+    }
+
+    private static String encode(
+            final String prefix,
+            final UUID peerId
+    ) {
+        final StringBuilder sb = acquire(0);
+
+        sb.append(prefix);
+        appendUuid(sb, peerId);
+
+        return release(sb.append('}'));
+    }
+
+    private static String encode(final RTCOfferResponse response) {
+        final StringBuilder sb = acquire(0);
+
+        sb.append(OFFER_PREFIX);
+        appendUuid(sb, response.getPeerId());
+        sb.append(",\"name\":");
+        appendString(sb, response.getName());
+        sb.append(",\"device\":");
+        appendString(sb, response.getDevice());
+        sb.append(",\"discoveryMode\":");
+        appendString(sb, response.getDiscoveryMode() != null ? response.getDiscoveryMode().name() : null);
+
+        return release(sb.append('}'));
+    }
+
+    private static void appendIceServers(
+            final StringBuilder sb,
+            final List<IceServer> iceServers
+    ) {
+        if (iceServers == null) {
+            sb.append("null");
+            return;
+        }
+
+        sb.append('[');
+
+        for (int i = 0; i < iceServers.size(); i++) {
+            final IceServer iceServer = iceServers.get(i);
+
+            if (i > 0) {
+                sb.append(',');
+            }
+
+            if (iceServer.getEncoded() != null) {
+                sb.append(iceServer.getEncoded());
+                continue;
+            }
+
+            final int start = sb.length();
+
+            sb.append("{\"urls\":");
+            appendString(sb, iceServer.getUrls());
+            sb.append(",\"username\":");
+            appendString(sb, iceServer.getUsername());
+            sb.append(",\"credential\":");
+            appendString(sb, iceServer.getCredential());
+            sb.append('}');
+
+            iceServer.setEncoded(sb.substring(start));
+        }
+
+        sb.append(']');
+    }
+
+    /**
+     * Take the calling thread's builder. It must be handed back with
+     * {@link #release(StringBuilder)} before the thread takes it again.
+     *
+     * @param capacity expected length of the message
+     */
+    public static StringBuilder acquire(final int capacity) {
+        final StringBuilder sb = BUFFER.get();
+        sb.setLength(0);
+        sb.ensureCapacity(capacity);
+        return sb;
+    }
+
+    /**
+     * @return the built message
+     */
+    public static String release(final StringBuilder sb) {
+        final String message = sb.toString();
+
+        if (sb.capacity() > MAX_POOLED_CAPACITY) {
+            BUFFER.remove();
+        }
+
+        return message;
+    }
+
+    /**
+     * Append a quoted JSON string, or null.
+     */
+    public static void appendString(
+            final StringBuilder sb,
+            final String value
+    ) {
+        if (value == null) {
+            sb.append("null");
+            return;
+        }
+
+        sb.append('"');
+        JsonStringEncoder.getInstance().quoteAsString(value, sb);
+        sb.append('"');
+    }
+
+    /**
+     * Append a quoted UUID as {@link UUID#toString()} formats it, without
+     * creating the string.
+     */
+    public static void appendUuid(
+            final StringBuilder sb,
+            final UUID uuid
+    ) {
+        if (uuid == null) {
+            sb.append("null");
+            return;
+        }
+
+        final long msb = uuid.getMostSignificantBits();
+        final long lsb = uuid.getLeastSignificantBits();
+
+        sb.append('"');
+        appendHex(sb, msb >>> 32, 8);
+        sb.append('-');
+        appendHex(sb, msb >>> 16, 4);
+        sb.append('-');
+        appendHex(sb, msb, 4);
+        sb.append('-');
+        appendHex(sb, lsb >>> 48, 4);
+        sb.append('-');
+        appendHex(sb, lsb, 12);
+        sb.append('"');
+    }
+
+    private static void appendHex(
+            final StringBuilder sb,
+            final long value,
+            final int digits
+    ) {
+        for (int shift = (digits - 1) * 4; shift >= 0; shift -= 4) {
+            sb.append(HEX_DIGITS[(int) (value >>> shift) & 0xF]);
+        }
+    }
+
+    private static String head(
+            final ResponseType type,
+            final String firstField
+    ) {
+        return "{\"type\":\"" + type.name() + "\",\"" + firstField + "\":";
+    }
+
+}
@@ -0,0 +1,83 @@
+package com.aircloud.server.stats;
+
+import lombok.Builder;
+import lombok.Getter;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free histogram of durations over fixed, roughly logarithmic buckets
+ * from 10 ms to 30 s, recording costs one counter increment.
+ */
+public class LatencyHistogram {
+
+    /**
+     * Upper bounds of the buckets in milliseconds, the last bucket is open.
+     */
+    private final static long[] BOUNDS = {10, 25, 50, 100, 250, 500, 1000, 2500, 5000, 10000, 30000};
+
+    private final LongAdder[] buckets = new LongAdder[BOUNDS.length + 1];
+    private final LongAdder totalMillis = new LongAdder();
+
+    public LatencyHistogram() {
+        for (int i = 0; i < buckets.length; i++) {
+            buckets[i] = new LongAdder();
+        }
+    }
+
+    public void record(final long millis) {
+        int bucket = 0;
+
+        while (bucket < BOUNDS.length && millis > BOUNDS[bucket]) {
+            bucket++;
+        }
+
+        buckets[bucket].increment();
+        totalMillis.add(millis);
+    }
+
+    public Snapshot snapshot() {
+        final List<Long> counts = new ArrayList<>(buckets.length);
+        long count = 0;
+
+        for (LongAdder bucket : buckets) {
+            final long value = bucket.sum();
+            counts.add(value);
+            count += value;
+        }
+
+        final List<Long> bounds = new ArrayList<>(BOUNDS.length);
+
+        for (long bound : BOUNDS) {
+            bounds.add(bound);
+        }
+
+        return Snapshot.builder()
+                .bucketBoundsMillis(bounds)
+                .bucketCounts(counts)
+                .count(count)
+                .meanMillis(count > 0 ? (double) totalMillis.sum() / count : 0)
+                .build();
+    }
+
+    /**
+     * Counts per bucket, a duration falls into the first bucket whose bound
+     * is not below it, the extra last count holds the slower ones.
+     */
+    @Getter
+    @Builder
+    public static class Snapshot {
+
+        private List<Long> bucketBoundsMillis;
+
+        private List<Long> bucketCounts;
+
+        private long count;
+
+        private double meanMillis;
+
+    }
+
+}
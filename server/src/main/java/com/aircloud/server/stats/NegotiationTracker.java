@@ -0,0 +1,309 @@
+package com.aircloud.server.stats;
+
+import com.aircloud.server.socket.DiscoveryMode;
+import com.aircloud.server.socket.dto.request.RequestType;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.Builder;
+import lombok.Getter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Follows peer connection setups as the server sees them: the discovery
+ * message asking one peer to make an offer, the relayed OFFER and ANSWER
+ * and both peers' END_OF_ICE_CANDIDATES. Every duration is measured from
+ * the discovery message, so it is the setup latency a user waits for.
+ * <p>
+ * At most {@code max-tracked} negotiations are followed at a time, further
+ * ones are only counted. A negotiation that does not complete within
+ * {@code timeout} seconds, or is started again before it completed, counts
+ * as abandoned at the step it was waiting for.
+ */
+@Component
+public class NegotiationTracker {
+
+    private final static long EXPIRY_PERIOD = 5;
+
+    @Value("${aircloud.negotiation.max-tracked}")
+    private int MAX_TRACKED;
+
+    @Value("${aircloud.negotiation.timeout}")
+    private int TIMEOUT;
+
+    public enum Step {
+
+        OFFER,
+        ANSWER,
+        ICE_COMPLETE,
+
+    }
+
+    private final Map<Pair, Negotiation> negotiations = new ConcurrentHashMap<>();
+    private final AtomicInteger tracked = new AtomicInteger();
+    private final LongAdder untracked = new LongAdder();
+
+    private final Map<DiscoveryMode, Outcomes> outcomes = new EnumMap<>(DiscoveryMode.class);
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+
+    public NegotiationTracker() {
+        for (DiscoveryMode mode : DiscoveryMode.values()) {
+            outcomes.put(mode, new Outcomes());
+        }
+    }
+
+    @PostConstruct
+    public void start() {
+        scheduler.scheduleWithFixedDelay(() -> expire(System.nanoTime()), EXPIRY_PERIOD, EXPIRY_PERIOD, TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        scheduler.shutdownNow();
+    }
+
+    /**
+     * The server asked one of the peers to make an offer to the other.
+     */
+    public void started(
+            final UUID peerA,
+            final UUID peerB,
+            final DiscoveryMode discoveryMode
+    ) {
+        if (peerA == null || peerB == null || discoveryMode == null) {
+            return;
+        }
+
+        final Negotiation negotiation = new Negotiation(discoveryMode, System.nanoTime());
+
+        negotiations.compute(Pair.of(peerA, peerB), (pair, previous) -> {
+            if (previous != null) {
+                abandoned(previous);
+            } else if (tracked.incrementAndGet() > MAX_TRACKED) {
+                tracked.decrementAndGet();
+                untracked.increment();
+                return null;
+            }
+
+            return negotiation;
+        });
+    }
+
+    /**
+     * An OFFER or ANSWER was relayed between the peers.
+     */
+    public void relayed(
+            final UUID sender,
+            final UUID target,
+            final RequestType type
+    ) {
+        final Negotiation negotiation = find(sender, target);
+
+        if (negotiation == null) {
+            return;
+        }
+
+        final long elapsed = System.nanoTime() - negotiation.startedAt;
+
+        if (type == RequestType.OFFER && negotiation.markOffered()) {
+            outcomes.get(negotiation.discoveryMode).timeToOffer.record(TimeUnit.NANOSECONDS.toMillis(elapsed));
+        } else if (type == RequestType.ANSWER && negotiation.markAnswered()) {
+            outcomes.get(negotiation.discoveryMode).timeToAnswer.record(TimeUnit.NANOSECONDS.toMillis(elapsed));
+        }
+    }
+
+    /**
+     * One of the peers has sent all its ICE candidates to the other. Once
+     * both have, the negotiation is complete.
+     */
+    public void endOfCandidates(
+            final UUID sender,
+            final UUID target
+    ) {
+        if (sender == null || target == null) {
+            return;
+        }
+
+        final Pair pair = Pair.of(sender, target);
+        final Negotiation negotiation = negotiations.get(pair);
+
+        if (negotiation == null || !negotiation.markEndOfCandidates(sender.equals(pair.low()))) {
+            return;
+        }
+
+        if (negotiations.remove(pair, negotiation)) {
+            tracked.decrementAndGet();
+
+            final Outcomes outcome = outcomes.get(negotiation.discoveryMode);
+            outcome.timeToIceComplete.record(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - negotiation.startedAt));
+            outcome.completed.increment();
+        }
+    }
+
+    void expire(final long now) {
+        final long timeout = TimeUnit.SECONDS.toNanos(TIMEOUT);
+        final Iterator<Map.Entry<Pair, Negotiation>> iterator = negotiations.entrySet().iterator();
+
+        while (iterator.hasNext()) {
+            final Map.Entry<Pair, Negotiation> entry = iterator.next();
+
+            if (now - entry.getValue().startedAt > timeout && negotiations.remove(entry.getKey(), entry.getValue())) {
+                tracked.decrementAndGet();
+                abandoned(entry.getValue());
+            }
+        }
+    }
+
+    public Map<DiscoveryMode, Snapshot> snapshot() {
+        final Map<DiscoveryMode, Snapshot> result = new EnumMap<>(DiscoveryMode.class);
+
+        outcomes.forEach((mode, outcome) -> {
+            final Map<Step, Long> abandoned = new EnumMap<>(Step.class);
+            outcome.abandoned.forEach((step, count) -> abandoned.put(step, count.sum()));
+
+            result.put(mode, Snapshot.builder()
+                    .timeToOffer(outcome.timeToOffer.snapshot())
+                    .timeToAnswer(outcome.timeToAnswer.snapshot())
+                    .timeToIceComplete(outcome.timeToIceComplete.snapshot())
+                    .completed(outcome.completed.sum())
+                    .abandoned(abandoned)
+                    .build());
+        });
+
+        return result;
+    }
+
+    public int getTracked() {
+        return tracked.get();
+    }
+
+    public long getUntracked() {
+        return untracked.sum();
+    }
+
+    private Negotiation find(
+            final UUID peerA,
+            final UUID peerB
+    ) {
+        return peerA != null && peerB != null ? negotiations.get(Pair.of(peerA, peerB)) : null;
+    }
+
+    private void abandoned(final Negotiation negotiation) {
+        outcomes.get(negotiation.discoveryMode).abandoned.get(negotiation.waitingFor()).increment();
+    }
+
+    /**
+     * The two peers of a negotiation in a fixed order, whoever offers.
+     */
+    private record Pair(UUID low, UUID high) {
+
+        static Pair of(
+                final UUID peerA,
+                final UUID peerB
+        ) {
+            return peerA.compareTo(peerB) <= 0 ? new Pair(peerA, peerB) : new Pair(peerB, peerA);
+        }
+
+    }
+
+    private static class Negotiation {
+
+        private final static int OFFERED = 1;
+        private final static int ANSWERED = 2;
+        private final static int LOW_CANDIDATES_DONE = 4;
+        private final static int HIGH_CANDIDATES_DONE = 8;
+
+        private final DiscoveryMode discoveryMode;
+
+        private final long startedAt;
+
+        private final AtomicInteger state = new AtomicInteger();
+
+        Negotiation(DiscoveryMode discoveryMode, long startedAt) {
+            this.discoveryMode = discoveryMode;
+            this.startedAt = startedAt;
+        }
+
+        boolean markOffered() {
+            return mark(OFFERED);
+        }
+
+        boolean markAnswered() {
+            return mark(ANSWERED);
+        }
+
+        /**
+         * @return whether both peers are done now
+         */
+        boolean markEndOfCandidates(final boolean low) {
+            mark(low ? LOW_CANDIDATES_DONE : HIGH_CANDIDATES_DONE);
+            final int done = LOW_CANDIDATES_DONE | HIGH_CANDIDATES_DONE;
+            return (state.get() & done) == done;
+        }
+
+        Step waitingFor() {
+            final int current = state.get();
+
+            if ((current & OFFERED) == 0) {
+                return Step.OFFER;
+            } else if ((current & ANSWERED) == 0) {
+                return Step.ANSWER;
+            } else {
+                return Step.ICE_COMPLETE;
+            }
+        }
+
+        /**
+         * @return whether the flag was newly set
+         */
+        private boolean mark(final int flag) {
+            return (state.getAndUpdate(current -> current | flag) & flag) == 0;
+        }
+
+    }
+
+    private static class Outcomes {
+
+        private final LatencyHistogram timeToOffer = new LatencyHistogram();
+        private final LatencyHistogram timeToAnswer = new LatencyHistogram();
+        private final LatencyHistogram timeToIceComplete = new LatencyHistogram();
+        private final LongAdder completed = new LongAdder();
+        private final Map<Step, LongAdder> abandoned = new EnumMap<>(Step.class);
+
+        Outcomes() {
+            for (Step step : Step.values()) {
+                abandoned.put(step, new LongAdder());
+            }
+        }
+
+    }
+
+    @Getter
+    @Builder
+    public static class Snapshot {
+
+        private LatencyHistogram.Snapshot timeToOffer;
+
+        private LatencyHistogram.Snapshot timeToAnswer;
+
+        private LatencyHistogram.Snapshot timeToIceComplete;
+
+        private long completed;
+
+        private Map<Step, Long> abandoned;
+
+    }
+
+}
@@ -0,0 +1,221 @@
+package com.aircloud.server.stats;
+
+import com.aircloud.server.socket.DiscoveryMode;
+import com.aircloud.server.socket.Peer;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Live registry counters, updated by the handler on every connect,
+ * disconnect, discovery mode change and network change, so reading them
+ * never touches the peer registry.
+ */
+@Component
+public class RegistryStats {
+
+    private final static int RATE_WINDOW = 61;
+
+    private final static int COUNT_BITS = 24;
+
+    private final static long COUNT_MASK = (1L << COUNT_BITS) - 1;
+
+    private final LongAdder peers = new LongAdder();
+    private final LongAdder connections = new LongAdder();
+    private final LongAdder disconnections = new LongAdder();
+    private final Map<DiscoveryMode, LongAdder> peersByMode = new EnumMap<>(DiscoveryMode.class);
+
+    private final Map<String, Integer> groupSizes = new ConcurrentHashMap<>();
+    private final ConcurrentSkipListSet<GroupSize> groupsBySize = new ConcurrentSkipListSet<>();
+
+    /**
+     * One slot per second, packing the second in the high bits and its count
+     * in the low {@link #COUNT_BITS}, so moving a slot to a new second and
+     * counting in it is a single compare-and-set. Sixty full seconds plus the
+     * current one fit in the window.
+     */
+    private final AtomicLongArray connectSlots = new AtomicLongArray(RATE_WINDOW);
+
+    public RegistryStats() {
+        for (DiscoveryMode mode : DiscoveryMode.values()) {
+            peersByMode.put(mode, new LongAdder());
+        }
+    }
+
+    public void peerConnected(final Peer peer) {
+        peers.increment();
+        connections.increment();
+        countMode(peer.getDiscoveryMode(), 1);
+        resizeGroup(networkOf(peer), 1);
+        countConnection(System.currentTimeMillis() / 1000);
+    }
+
+    public void peerDisconnected(final Peer peer) {
+        peers.decrement();
+        disconnections.increment();
+        countMode(peer.getDiscoveryMode(), -1);
+        resizeGroup(networkOf(peer), -1);
+    }
+
+    public void discoveryModeChanged(
+            final DiscoveryMode previous,
+            final DiscoveryMode current
+    ) {
+        if (previous != current) {
+            countMode(previous, -1);
+            countMode(current, 1);
+        }
+    }
+
+    public void networkChanged(
+            final String previous,
+            final String current
+    ) {
+        if (!Objects.equals(previous, current)) {
+            resizeGroup(previous, -1);
+            resizeGroup(current, 1);
+        }
+    }
+
+    public long getPeers() {
+        return peers.sum();
+    }
+
+    public long getConnections() {
+        return connections.sum();
+    }
+
+    public long getDisconnections() {
+        return disconnections.sum();
+    }
+
+    public Map<DiscoveryMode, Long> getPeersByDiscoveryMode() {
+        final Map<DiscoveryMode, Long> result = new EnumMap<>(DiscoveryMode.class);
+        peersByMode.forEach((mode, count) -> result.put(mode, count.sum()));
+        return result;
+    }
+
+    /**
+     * @return sizes of the largest network groups, largest first, without
+     * revealing their networks
+     */
+    public List<Integer> getLargestGroups(final int limit) {
+        final List<Integer> result = new ArrayList<>(limit);
+        final Iterator<GroupSize> iterator = groupsBySize.descendingIterator();
+
+        while (iterator.hasNext() && result.size() < limit) {
+            result.add(iterator.next().size());
+        }
+
+        return result;
+    }
+
+    /**
+     * @return average connections per second over the last full seconds, up
+     * to a minute
+     */
+    public double getConnectionsPerSecond(final int seconds) {
+        return getConnectionsPerSecond(seconds, System.currentTimeMillis() / 1000);
+    }
+
+    double getConnectionsPerSecond(
+            final int seconds,
+            final long now
+    ) {
+        final int window = Math.min(seconds, RATE_WINDOW - 1);
+        long total = 0;
+
+        for (long second = now - window; second < now; second++) {
+            final long packed = connectSlots.get(slot(second));
+
+            if (packed >>> COUNT_BITS == second) {
+                total += packed & COUNT_MASK;
+            }
+        }
+
+        return (double) total / window;
+    }
+
+    private void countMode(
+            final DiscoveryMode mode,
+            final int delta
+    ) {
+        if (mode != null) {
+            peersByMode.get(mode).add(delta);
+        }
+    }
+
+    private static String networkOf(final Peer peer) {
+        return peer.getNetwork() != null ? peer.getNetwork().getKey() : peer.getIpAddress();
+    }
+
+    /**
+     * Group sizes change under the map's per-key lock, so the size index is
+     * updated consistently for every network.
+     */
+    private void resizeGroup(
+            final String network,
+            final int delta
+    ) {
+        if (network == null) {
+            return;
+        }
+
+        groupSizes.compute(network, (key, size) -> {
+            final int previous = size == null ? 0 : size;
+            final int current = previous + delta;
+
+            if (previous > 0) {
+                groupsBySize.remove(new GroupSize(previous, key));
+            }
+
+            if (current > 0) {
+                groupsBySize.add(new GroupSize(current, key));
+                return current;
+            }
+
+            return null;
+        });
+    }
+
+    void countConnection(final long second) {
+        final int slot = slot(second);
+        long packed;
+        long next;
+
+        do {
+            packed = connectSlots.get(slot);
+            final long slotSecond = packed >>> COUNT_BITS;
+
+            if (slotSecond > second || slotSecond == second && (packed & COUNT_MASK) == COUNT_MASK) {
+                return;
+            }
+
+            next = slotSecond == second ? packed + 1 : second << COUNT_BITS | 1;
+        } while (!connectSlots.compareAndSet(slot, packed, next));
+    }
+
+    private static int slot(final long second) {
+        return (int) (second % RATE_WINDOW);
+    }
+
+    private record GroupSize(int size, String network) implements Comparable<GroupSize> {
+
+        @Override
+        public int compareTo(final GroupSize other) {
+            final int bySize = Integer.compare(size, other.size);
+            return bySize != 0 ? bySize : network.compareTo(other.network);
+        }
+
+    }
+
+}
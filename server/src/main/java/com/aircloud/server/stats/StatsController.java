@@ -0,0 +1,95 @@
+package com.aircloud.server.stats;
+
+import com.aircloud.server.ice.CandidateFilter;
+import com.aircloud.server.sdp.SdpMinimizer;
+import com.aircloud.server.socket.AdmissionController;
+import com.aircloud.server.socket.OverloadController;
+import com.aircloud.server.socket.SessionReaper;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+
+/**
+ * Read-only view of the signaling counters. Every value is maintained
+ * incrementally, so polling this endpoint costs the same for 10 or 100k peers.
+ * The counters expose internal load, so the endpoint only answers requests
+ * carrying the configured bearer token, and is not found while none is set.
+ */
+@RestController
+@RequiredArgsConstructor
+public class StatsController {
+
+    @Value("${aircloud.stats.largest-groups}")
+    private int LARGEST_GROUPS;
+
+    @Value("${aircloud.stats.token}")
+    private String STATS_TOKEN;
+
+    private final RegistryStats registryStats;
+
+    private final SessionReaper reaper;
+
+    private final OverloadController overload;
+
+    private final AdmissionController admission;
+
+    private final NegotiationTracker negotiations;
+
+    private final CandidateFilter candidates;
+
+    private final SdpMinimizer sdpMinimizer;
+
+    @GetMapping("/stats")
+    public StatsResponse getStats(@RequestHeader(value = HttpHeaders.AUTHORIZATION, required = false) final String authorization) {
+        authorize(authorization);
+
+        return StatsResponse.builder()
+                .peers(registryStats.getPeers())
+                .peersByDiscoveryMode(registryStats.getPeersByDiscoveryMode())
+                .largestNetworkGroups(registryStats.getLargestGroups(LARGEST_GROUPS))
+                .connections(registryStats.getConnections())
+                .disconnections(registryStats.getDisconnections())
+                .connectionsPerSecond(registryStats.getConnectionsPerSecond(1))
+                .connectionsPerSecondLastMinute(registryStats.getConnectionsPerSecond(60))
+                .reapedIdleSessions(reaper.getReapedIdleSessions())
+                .reapedBrokenSessions(reaper.getReapedBrokenSessions())
+                .sheddingLevel(overload.getLevel())
+                .deferredBroadcasts(overload.getDeferredBroadcasts())
+                .droppedBroadcasts(overload.getDroppedBroadcasts())
+                .skippedRefreshes(overload.getSkippedRefreshes())
+                .rejectedHandshakes(admission.getRejectedHandshakes())
+                .rejectedConnections(admission.getRejectedConnections())
+                .negotiations(negotiations.snapshot())
+                .trackedNegotiations(negotiations.getTracked())
+                .untrackedNegotiations(negotiations.getUntracked())
+                .duplicateIceCandidates(candidates.getDuplicates())
+                .droppedIceCandidates(candidates.getDropped())
+                .relayedSdpBytes(sdpMinimizer.getBytesIn())
+                .minimizedSdpBytes(sdpMinimizer.getBytesOut())
+                .build();
+    }
+
+    private void authorize(final String authorization) {
+        if (STATS_TOKEN == null || STATS_TOKEN.isBlank()) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND);
+        }
+
+        final String expected = "Bearer " + STATS_TOKEN;
+
+        if (authorization == null || !MessageDigest.isEqual(
+                expected.getBytes(StandardCharsets.UTF_8),
+                authorization.getBytes(StandardCharsets.UTF_8)
+        )) {
+            throw new ResponseStatusException(HttpStatus.UNAUTHORIZED);
+        }
+    }
+
+}
@@ -0,0 +1,59 @@
+package com.aircloud.server.stats;
+
+import com.aircloud.server.socket.DiscoveryMode;
+import com.aircloud.server.socket.OverloadController;
+import lombok.Builder;
+import lombok.Getter;
+
+import java.util.List;
+import java.util.Map;
+
+@Getter
+@Builder
+public class StatsResponse {
+
+    private long peers;
+
+    private Map<DiscoveryMode, Long> peersByDiscoveryMode;
+
+    private List<Integer> largestNetworkGroups;
+
+    private long connections;
+
+    private long disconnections;
+
+    private double connectionsPerSecond;
+
+    private double connectionsPerSecondLastMinute;
+
+    private long reapedIdleSessions;
+
+    private long reapedBrokenSessions;
+
+    private OverloadController.Level sheddingLevel;
+
+    private long deferredBroadcasts;
+
+    private long droppedBroadcasts;
+
+    private long skippedRefreshes;
+
+    private long rejectedHandshakes;
+
+    private long rejectedConnections;
+
+    private Map<DiscoveryMode, NegotiationTracker.Snapshot> negotiations;
+
+    private int trackedNegotiations;
+
+    private long untrackedNegotiations;
+
+    private long duplicateIceCandidates;
+
+    private long droppedIceCandidates;
+
+    private long relayedSdpBytes;
+
+    private long minimizedSdpBytes;
+
+}
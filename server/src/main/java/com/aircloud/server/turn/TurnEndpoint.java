@@ -0,0 +1,81 @@
+package com.aircloud.server.turn;
+
+import lombok.Getter;
+import lombok.Setter;
+
+import java.net.InetSocketAddress;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * One STUN/TURN server of the pool, with the state learned by probing it and
+ * the number of peers it is currently handed out to.
+ */
+@Getter
+public class TurnEndpoint {
+
+    private final static int DEFAULT_PORT = 3478;
+    private final static int DEFAULT_TLS_PORT = 5349;
+
+    private final String stunUrl;
+
+    private final String turnUrl;
+
+    private final String host;
+
+    private final int port;
+
+    private final boolean tcp;
+
+    private final boolean tls;
+
+    private final AtomicInteger assignedPeers = new AtomicInteger();
+
+    @Setter
+    private volatile boolean healthy = true;
+
+    @Setter
+    private volatile long rtt;
+
+    @Setter
+    private int failures;
+
+    public TurnEndpoint(String stunUrl, String turnUrl) {
+        this.stunUrl = stunUrl;
+        this.turnUrl = turnUrl;
+
+        final int scheme = turnUrl.indexOf(':');
+        final int query = turnUrl.indexOf('?');
+        final String authority = turnUrl.substring(scheme + 1, query >= 0 ? query : turnUrl.length());
+
+        this.tls = turnUrl.startsWith("turns:");
+        this.tcp = tls || (query >= 0 && turnUrl.substring(query).contains("transport=tcp"));
+
+        final int portSeparator = authority.lastIndexOf(':');
+        final boolean hasPort = portSeparator > authority.lastIndexOf(']');
+
+        this.host = stripBrackets(hasPort ? authority.substring(0, portSeparator) : authority);
+        this.port = hasPort ? Integer.parseInt(authority.substring(portSeparator + 1)) : tls ? DEFAULT_TLS_PORT : DEFAULT_PORT;
+    }
+
+    public InetSocketAddress getAddress() {
+        return new InetSocketAddress(host, port);
+    }
+
+    /**
+     * Lower is better: an endpoint twice as far away is as good as one with
+     * twice as many peers.
+     */
+    public long getScore() {
+        return (assignedPeers.get() + 1L) * (rtt / 1_000_000 + 1);
+    }
+
+    @Override
+    public String toString() {
+        return turnUrl;
+    }
+
+    private static String stripBrackets(final String host) {
+        return host.startsWith("[") && host.endsWith("]") ? host.substring(1, host.length() - 1) : host;
+    }
+
+}
@@ -0,0 +1,143 @@
+package com.aircloud.server.turn;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.security.SecureRandom;
+import java.util.Arrays;
+
+/**
+ * Measures whether a STUN/TURN server answers and how fast.
+ * <p>
+ * UDP and plain TCP endpoints get a STUN Binding Request (RFC 8489) and any
+ * response carrying the same transaction ID counts as alive, TLS endpoints
+ * are only connected to.
+ */
+public class TurnHealthProbe {
+
+    private final static int HEADER_LENGTH = 20;
+    private final static int MAGIC_COOKIE = 0x2112A442;
+    private final static short BINDING_REQUEST = 0x0001;
+
+    private final static SecureRandom RANDOM = new SecureRandom();
+
+    private final int timeout;
+
+    /**
+     * @param timeout milliseconds to wait for a response
+     */
+    public TurnHealthProbe(int timeout) {
+        this.timeout = timeout;
+    }
+
+    /**
+     * @return round trip time in nanoseconds, or -1 if the endpoint did not answer
+     */
+    public long probe(final TurnEndpoint endpoint) {
+        try {
+            final InetSocketAddress address = endpoint.getAddress();
+
+            if (endpoint.isTls()) {
+                return probeConnect(address);
+            } else if (endpoint.isTcp()) {
+                return probeTcp(address);
+            } else {
+                return probeUdp(address);
+            }
+        } catch (IOException | IllegalArgumentException e) {
+            return -1;
+        }
+    }
+
+    long probeUdp(final InetSocketAddress address) throws IOException {
+        final byte[] request = bindingRequest();
+        final byte[] buffer = new byte[512];
+
+        try (DatagramSocket socket = new DatagramSocket()) {
+            socket.setSoTimeout(timeout);
+
+            final long started = System.nanoTime();
+            final long deadline = started + timeout * 1_000_000L;
+            socket.send(new DatagramPacket(request, request.length, address));
+
+            while (System.nanoTime() < deadline) {
+                final DatagramPacket response = new DatagramPacket(buffer, buffer.length);
+                socket.receive(response);
+
+                if (isResponseTo(request, response.getData(), response.getLength())) {
+                    return System.nanoTime() - started;
+                }
+            }
+        } catch (SocketTimeoutException e) {
+            return -1;
+        }
+
+        return -1;
+    }
+
+    long probeTcp(final InetSocketAddress address) throws IOException {
+        final byte[] request = bindingRequest();
+        final byte[] header = new byte[HEADER_LENGTH];
+
+        try (Socket socket = new Socket()) {
+            final long started = System.nanoTime();
+            socket.connect(address, timeout);
+            socket.setSoTimeout(timeout);
+
+            final OutputStream out = socket.getOutputStream();
+            out.write(request);
+            out.flush();
+
+            new DataInputStream(socket.getInputStream()).readFully(header);
+            return isResponseTo(request, header, header.length) ? System.nanoTime() - started : -1;
+        } catch (SocketTimeoutException e) {
+            return -1;
+        }
+    }
+
+    long probeConnect(final InetSocketAddress address) throws IOException {
+        try (Socket socket = new Socket()) {
+            final long started = System.nanoTime();
+            socket.connect(address, timeout);
+            return System.nanoTime() - started;
+        } catch (SocketTimeoutException e) {
+            return -1;
+        }
+    }
+
+    static byte[] bindingRequest() {
+        final byte[] transactionId = new byte[12];
+        RANDOM.nextBytes(transactionId);
+
+        return ByteBuffer.allocate(HEADER_LENGTH)
+                .putShort(BINDING_REQUEST)
+                .putShort((short) 0)
+                .putInt(MAGIC_COOKIE)
+                .put(transactionId)
+                .array();
+    }
+
+    /**
+     * A response echoes the magic cookie and transaction ID of the request and
+     * has a response class, success (0x0101) or error (0x0111).
+     */
+    static boolean isResponseTo(
+            final byte[] request,
+            final byte[] response,
+            final int length
+    ) {
+        if (length < HEADER_LENGTH || (response[0] & 0xC0) != 0) {
+            return false;
+        }
+
+        final boolean responseClass = (response[0] & 0x01) != 0;
+        return responseClass && Arrays.equals(request, 4, HEADER_LENGTH, response, 4, HEADER_LENGTH);
+    }
+
+}
@@ -0,0 +1,173 @@
+package com.aircloud.server.turn;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Configured STUN/TURN servers, probed in the background.
+ * <p>
+ * The pool is read from {@code aircloud.turn.pool} as comma separated
+ * {@code <stun-url> <turn-url>} pairs, or falls back to the single
+ * {@code stun-ip}/{@code turn-ip} pair. Load is estimated as the number of
+ * peers an endpoint is currently handed out to as their primary TURN server.
+ */
+@Log4j2
+@Component
+public class TurnPool {
+
+    /**
+     * Consecutive failed probes before an endpoint is taken out of rotation.
+     */
+    private final static int MAX_FAILURES = 2;
+
+    @Value("${aircloud.turn.stun-ip}")
+    private String STUN_IP;
+
+    @Value("${aircloud.turn.turn-ip}")
+    private String TURN_IP;
+
+    @Value("${aircloud.turn.pool}")
+    private String TURN_POOL;
+
+    @Value("${aircloud.turn.servers-per-peer}")
+    private int SERVERS_PER_PEER;
+
+    @Value("${aircloud.turn.probe-interval}")
+    private int PROBE_INTERVAL;
+
+    @Value("${aircloud.turn.probe-timeout}")
+    private int PROBE_TIMEOUT;
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+    private final AtomicLong version = new AtomicLong();
+
+    private volatile List<TurnEndpoint> endpoints = List.of();
+
+    private TurnHealthProbe probe;
+
+    @PostConstruct
+    public void init() {
+        probe = new TurnHealthProbe(PROBE_TIMEOUT);
+        configure(parse(TURN_POOL, STUN_IP, TURN_IP));
+
+        if (PROBE_INTERVAL > 0) {
+            scheduler.scheduleWithFixedDelay(this::probeAll, 0, PROBE_INTERVAL, TimeUnit.SECONDS);
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        scheduler.shutdownNow();
+    }
+
+    /**
+     * Replace the endpoints of the pool. Every peer picks up the new endpoints
+     * on its next heartbeat.
+     */
+    public void configure(final List<TurnEndpoint> endpoints) {
+        this.endpoints = List.copyOf(endpoints);
+        version.incrementAndGet();
+        log.info("TURN pool configured with {}", endpoints);
+    }
+
+    public long getVersion() {
+        return version.get();
+    }
+
+    public List<TurnEndpoint> getEndpoints() {
+        return endpoints;
+    }
+
+    /**
+     * @return whether any endpoint is in rotation, so moving a peer off an
+     * unhealthy one can help
+     */
+    public boolean hasHealthy() {
+        for (TurnEndpoint endpoint : endpoints) {
+            if (endpoint.isHealthy()) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Pick the healthy endpoints with the lowest load and round trip time,
+     * best first. If none is healthy every endpoint is a candidate, a server
+     * that might answer is better than none.
+     */
+    public List<TurnEndpoint> select() {
+        final List<TurnEndpoint> current = endpoints;
+        final List<TurnEndpoint> candidates = new ArrayList<>(current.size());
+
+        for (TurnEndpoint endpoint : current) {
+            if (endpoint.isHealthy()) {
+                candidates.add(endpoint);
+            }
+        }
+
+        if (candidates.isEmpty()) {
+            candidates.addAll(current);
+        }
+
+        candidates.sort(Comparator.comparingLong(TurnEndpoint::getScore));
+        return candidates.size() > SERVERS_PER_PEER ? candidates.subList(0, SERVERS_PER_PEER) : candidates;
+    }
+
+    void probeAll() {
+        for (TurnEndpoint endpoint : endpoints) {
+            final long rtt = probe.probe(endpoint);
+            final boolean wasHealthy = endpoint.isHealthy();
+
+            if (rtt >= 0) {
+                endpoint.setRtt(endpoint.getRtt() == 0 ? rtt : (endpoint.getRtt() * 3 + rtt) / 4);
+                endpoint.setFailures(0);
+                endpoint.setHealthy(true);
+            } else {
+                endpoint.setFailures(endpoint.getFailures() + 1);
+                endpoint.setHealthy(endpoint.getFailures() < MAX_FAILURES);
+            }
+
+            if (wasHealthy != endpoint.isHealthy()) {
+                log.warn("TURN endpoint {} is {}", endpoint, endpoint.isHealthy() ? "healthy again" : "unhealthy");
+            }
+        }
+    }
+
+    static List<TurnEndpoint> parse(
+            final String pool,
+            final String stunIp,
+            final String turnIp
+    ) {
+        final List<TurnEndpoint> result = new ArrayList<>();
+
+        if (pool != null && !pool.isBlank()) {
+            for (String entry : pool.split(",")) {
+                final String[] urls = entry.trim().split("\\s+");
+
+                if (urls.length == 2) {
+                    result.add(new TurnEndpoint(urls[0], urls[1]));
+                } else if (!entry.isBlank()) {
+                    log.warn("Ignoring TURN pool entry '{}', expected '<stun-url> <turn-url>'", entry.trim());
+                }
+            }
+        } else if (turnIp != null && !turnIp.isBlank()) {
+            result.add(new TurnEndpoint(stunIp, turnIp));
+        }
+
+        return result;
+    }
+
+}
@@ -0,0 +1,53 @@
+package com.aircloud.server;
+
+import java.lang.management.ManagementFactory;
+import java.util.function.Supplier;
+
+/**
+ * Minimal single-threaded micro benchmark for the {@code *Benchmark} mains of
+ * the test sources, run with {@code ./gradlew benchmark -Pbenchmark=<class>}.
+ * <p>
+ * Time per operation is wall clock over the measured iterations, allocation
+ * is read from {@link com.sun.management.ThreadMXBean}. Both include the
+ * result the operation returns. Numbers are only comparable between runs on
+ * the same machine and JDK, which is printed first.
+ */
+public final class Benchmark {
+
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private static volatile Object sink;
+
+    private Benchmark() {
+    }
+
+    public static void header(final int warmup, final int iterations) {
+        System.out.printf("%s %s, %d warm-up and %d measured iterations, one thread%n",
+                System.getProperty("java.vm.name"), Runtime.version(), warmup, iterations);
+    }
+
+    public static void run(
+            final String name,
+            final int warmup,
+            final int iterations,
+            final Supplier<?> operation
+    ) {
+        for (int i = 0; i < warmup; i++) {
+            sink = operation.get();
+        }
+
+        final long allocatedBefore = THREADS.getCurrentThreadAllocatedBytes();
+        final long startedAt = System.nanoTime();
+
+        for (int i = 0; i < iterations; i++) {
+            sink = operation.get();
+        }
+
+        final long elapsed = System.nanoTime() - startedAt;
+        final long allocated = THREADS.getCurrentThreadAllocatedBytes() - allocatedBefore;
+
+        System.out.printf("  %-48s %10.1f ns/op %10d B/op%n", name, (double) elapsed / iterations, allocated / iterations);
+    }
+
+}
@@ -0,0 +1,166 @@
+package com.aircloud.server.capture;
+
+import com.aircloud.server.socket.DiscoveryMode;
+import com.aircloud.server.socket.Peer;
+import com.aircloud.server.socket.dto.request.RequestType;
+import com.aircloud.server.socket.relay.RelayFrame;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class CaptureRecordTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void testRecordsSurviveRoundTrip() throws Exception {
+        final List<CaptureRecord> records = List.of(
+                new CaptureRecord(CaptureRecord.Kind.OPEN, 12, 0, 3, null, -1, null, 0),
+                new CaptureRecord(CaptureRecord.Kind.REQUEST, 250, 0, -1, RequestType.CONNECT, -1, DiscoveryMode.DIRECT, 0),
+                new CaptureRecord(CaptureRecord.Kind.REQUEST, 250, 0, -1, RequestType.ICE_CANDIDATE, 7, null, 131),
+                new CaptureRecord(CaptureRecord.Kind.PONG, 15_000_000, 0, -1, null, -1, null, 0),
+                new CaptureRecord(CaptureRecord.Kind.CLOSE, 15_000_001, 0, -1, null, -1, null, 0)
+        );
+
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final DataOutputStream out = new DataOutputStream(bytes);
+        long previousAt = 0;
+
+        for (CaptureRecord record : records) {
+            record.write(out, previousAt);
+            previousAt = record.at();
+        }
+
+        assertThat(readAll(bytes.toByteArray())).isEqualTo(records);
+    }
+
+    @Test
+    void testOtherVersionIsRejected() throws Exception {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final DataOutputStream out = new DataOutputStream(bytes);
+
+        out.writeInt(CaptureRecord.MAGIC);
+        out.writeShort(CaptureRecord.VERSION + 1);
+
+        assertThatThrownBy(() -> CaptureRecord.readHeader(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()))))
+                .isInstanceOf(IOException.class)
+                .hasMessageContaining("version");
+    }
+
+    @Test
+    void testUnknownRequestTypeIsReadAsNull() throws Exception {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final DataOutputStream out = new DataOutputStream(bytes);
+
+        out.writeByte(3);
+        out.writeByte(0);
+        out.writeByte(0);
+        out.writeUTF("RENEGOTIATE");
+        out.writeByte(0);
+        out.writeUTF("");
+        out.writeByte(0);
+
+        assertThat(readAll(bytes.toByteArray()).getFirst().requestType()).isNull();
+    }
+
+    @Test
+    void testCaptureFileIsReadBack() throws Exception {
+        final SignalCapture capture = new SignalCapture();
+        ReflectionTestUtils.setField(capture, "CAPTURE_ENABLED", true);
+        ReflectionTestUtils.setField(capture, "CAPTURE_PATH", directory.toString());
+        capture.start();
+
+        final WebSocketSession a = session("a", "203.0.113.7");
+        final WebSocketSession b = session("b", "198.51.100.4");
+        final UUID peerIdB = UUID.randomUUID();
+
+        capture.opened(a);
+        capture.opened(b);
+        capture.identified(b, peer(peerIdB));
+        capture.request(a, RelayFrame.parseAll(
+                "{\"type\":\"ICE_CANDIDATE\",\"data\":{\"peerId\":\"" + peerIdB + "\",\"candidate\":{\"candidate\":\"\"}}}"
+        ).getFirst());
+        capture.closed(a);
+        capture.stop();
+
+        final Path file;
+
+        try (var files = Files.list(directory)) {
+            file = files.findFirst().orElseThrow();
+        }
+
+        try (DataInputStream in = new DataInputStream(Files.newInputStream(file))) {
+            CaptureRecord.readHeader(in);
+            in.readLong();
+
+            final List<CaptureRecord> records = readAll(in);
+
+            assertThat(records).extracting(CaptureRecord::kind).containsExactly(
+                    CaptureRecord.Kind.OPEN, CaptureRecord.Kind.OPEN, CaptureRecord.Kind.REQUEST, CaptureRecord.Kind.CLOSE
+            );
+            assertThat(records).extracting(CaptureRecord::session).containsExactly(0, 1, 0, 0);
+            assertThat(records.get(1).networkGroup()).isEqualTo(1);
+            assertThat(records.get(2).requestType()).isEqualTo(RequestType.ICE_CANDIDATE);
+            assertThat(records.get(2).target()).isEqualTo(1);
+            assertThat(records.get(2).size()).isEqualTo(16);
+        }
+    }
+
+    private static List<CaptureRecord> readAll(final byte[] bytes) throws Exception {
+        return readAll(new DataInputStream(new ByteArrayInputStream(bytes)));
+    }
+
+    private static List<CaptureRecord> readAll(final DataInputStream in) throws Exception {
+        final List<CaptureRecord> records = new ArrayList<>();
+        CaptureRecord record;
+        long previousAt = 0;
+
+        while ((record = CaptureRecord.read(in, previousAt)) != null) {
+            records.add(record);
+            previousAt = record.at();
+        }
+
+        return records;
+    }
+
+    private static WebSocketSession session(
+            final String id,
+            final String ipAddress
+    ) {
+        final Map<String, Object> attributes = new HashMap<>();
+        attributes.put("ipAddress", ipAddress);
+
+        final WebSocketSession session = mock(WebSocketSession.class);
+        when(session.getId()).thenReturn(id);
+        when(session.getAttributes()).thenReturn(attributes);
+        return session;
+    }
+
+    private static Peer peer(final UUID peerId) {
+        final Peer peer = mock(Peer.class);
+        when(peer.getPeerId()).thenReturn(peerId);
+        when(peer.getConnectionId()).thenReturn("ABC123");
+        return peer;
+    }
+
+}
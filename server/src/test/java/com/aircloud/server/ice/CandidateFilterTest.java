@@ -0,0 +1,101 @@
+package com.aircloud.server.ice;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CandidateFilterTest {
+
+    private static final String SRFLX = "{\"candidate\":\"candidate:842163049 1 udp 1677729535 198.51.100.4 54321 typ srflx raddr 0.0.0.0 rport 0 generation 0\",\"sdpMid\":\"0\",\"sdpMLineIndex\":0}";
+    private static final String HOST_TCP = "{\"candidate\":\"candidate:1 1 TCP 1518280447 192.168.1.2 9 typ host tcptype active generation 0\",\"sdpMid\":\"0\",\"sdpMLineIndex\":0}";
+    private static final String HOST_UDP = "{\"candidate\":\"candidate:2 1 udp 2122260223 192.168.1.2 50000 typ host generation 0\",\"sdpMid\":\"0\",\"sdpMLineIndex\":0}";
+
+    private final CandidateFilter filter = new CandidateFilter();
+
+    private final UUID peerA = UUID.randomUUID();
+    private final UUID peerB = UUID.randomUUID();
+
+    @BeforeEach
+    void configure() {
+        ReflectionTestUtils.setField(filter, "DEDUP_WINDOW", 30);
+        ReflectionTestUtils.setField(filter, "MAX_TRACKED", 2);
+    }
+
+    @Test
+    void testDuplicateWithinWindowIsDropped() {
+        assertThat(filter.admit(peerA, peerB, SRFLX)).isTrue();
+        assertThat(filter.admit(peerA, peerB, SRFLX)).isFalse();
+        assertThat(filter.admit(peerB, peerA, SRFLX)).as("other direction").isTrue();
+        assertThat(filter.admit(peerA, peerB, HOST_UDP)).isTrue();
+        assertThat(filter.getDuplicates()).isEqualTo(1);
+    }
+
+    @Test
+    void testCandidateIsHashedInPlace() {
+        final String frame = "{\"type\":\"ICE_CANDIDATE\",\"data\":{\"peerId\":\"" + peerB + "\",\"candidate\":" + SRFLX + "}}";
+        final int start = frame.indexOf(SRFLX);
+
+        assertThat(filter.admit(peerA, peerB, frame, start, start + SRFLX.length())).isTrue();
+        assertThat(filter.admit(peerA, peerB, SRFLX)).isFalse();
+    }
+
+    @Test
+    void testCandidateIsComparedByItsCandidateField() {
+        final String respelled = "{ \"sdpMLineIndex\": 0, \"sdpMid\": \"0\", \"candidate\": "
+                + "\"candidate:842163049 1 udp 1677729535 198.51.100.4 54321 typ srflx raddr 0.0.0.0 rport 0 generation\\u0020\\u0030\" }";
+
+        assertThat(filter.admit(peerA, peerB, SRFLX)).isTrue();
+        assertThat(filter.admit(peerA, peerB, respelled)).as("same candidate, other spelling").isFalse();
+    }
+
+    @Test
+    void testEndOfCandidatesIsNeverDuplicate() {
+        final String endOfCandidates = "{\"candidate\":\"\",\"sdpMid\":\"0\"}";
+
+        assertThat(filter.admit(peerA, peerB, endOfCandidates)).isTrue();
+        assertThat(filter.admit(peerA, peerB, "{\"candidate\":\"\",\"sdpMid\":\"1\"}")).isTrue();
+        assertThat(filter.admit(peerA, peerB, endOfCandidates)).isTrue();
+    }
+
+    @Test
+    void testNewNegotiationAndExpiryForgetCandidates() {
+        filter.admit(peerA, peerB, SRFLX);
+        filter.reset(peerB, peerA);
+
+        assertThat(filter.admit(peerA, peerB, SRFLX)).isTrue();
+
+        filter.expire(System.nanoTime() + TimeUnit.SECONDS.toNanos(31));
+
+        assertThat(filter.getTrackedRoutes()).isZero();
+        assertThat(filter.admit(peerA, peerB, SRFLX)).isTrue();
+    }
+
+    @Test
+    void testRoutesBeyondCapacityAreNotFiltered() {
+        filter.admit(peerA, peerB, SRFLX);
+        filter.admit(peerB, peerA, SRFLX);
+
+        final UUID peerC = UUID.randomUUID();
+
+        assertThat(filter.admit(peerC, peerA, SRFLX)).isTrue();
+        assertThat(filter.admit(peerC, peerA, SRFLX)).isTrue();
+        assertThat(filter.getTrackedRoutes()).isEqualTo(2);
+    }
+
+    @Test
+    void testPolicyDropsUnusableCandidateTypes() {
+        filter.configure("host/tcp, prflx");
+
+        assertThat(filter.admit(peerA, peerB, HOST_TCP)).isFalse();
+        assertThat(filter.admit(peerA, peerB, HOST_UDP)).isTrue();
+        assertThat(filter.admit(peerA, peerB, "{\"candidate\":\"candidate:3 1 udp 1853824767 203.0.113.9 61000 typ prflx\"}")).isFalse();
+        assertThat(filter.admit(peerA, peerB, "{\"candidate\":\"\",\"sdpMid\":\"0\"}")).as("end of candidates").isTrue();
+        assertThat(filter.getDropped()).isEqualTo(2);
+    }
+
+}
@@ -0,0 +1,50 @@
+package com.aircloud.server.logging;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class LogSamplerTest {
+
+    private final LogSampler sampler = new LogSampler();
+
+    @BeforeEach
+    void configure() {
+        ReflectionTestUtils.setField(sampler, "PONG_RATE", 0.0);
+        ReflectionTestUtils.setField(sampler, "CONNECT_RATE", 1.0);
+        ReflectionTestUtils.setField(sampler, "DISCONNECT_RATE", 1.0);
+        ReflectionTestUtils.setField(sampler, "DISCOVERY_RATE", 0.25);
+        ReflectionTestUtils.setField(sampler, "SUMMARY_PERIOD", 60);
+    }
+
+    @Test
+    void testEventsAreSampledByRate() {
+        int discoveries = 0;
+
+        for (int i = 0; i < 10_000; i++) {
+            assertThat(sampler.sample(LogSampler.Event.PONG)).isFalse();
+            assertThat(sampler.sample(LogSampler.Event.CONNECT)).isTrue();
+
+            if (sampler.sample(LogSampler.Event.DISCOVERY)) {
+                discoveries++;
+            }
+        }
+
+        assertThat(discoveries).isBetween(2000, 3000);
+    }
+
+    @Test
+    void testSummaryCountsEveryEventAndResets() {
+        assertThat(sampler.summarize()).isNull();
+
+        sampler.sample(LogSampler.Event.PONG);
+        sampler.sample(LogSampler.Event.PONG);
+        sampler.sample(LogSampler.Event.DISCONNECT);
+
+        assertThat(sampler.summarize()).isEqualTo("Last 60 s: 2 pongs, 0 connects, 1 disconnects, 0 discoveries");
+        assertThat(sampler.summarize()).isNull();
+    }
+
+}
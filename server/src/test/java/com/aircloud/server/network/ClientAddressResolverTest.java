@@ -0,0 +1,66 @@
+package com.aircloud.server.network;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ClientAddressResolverTest {
+
+    private static final String CLOUDFLARE = "173.245.48.0/20, 2400:cb00::/32";
+
+    private final ClientAddressResolver resolver = new ClientAddressResolver();
+
+    @Test
+    void testForwardedRequestFromTrustedProxyUsesClientAddress() {
+        resolver.configure("cf-connecting-ip", CLOUDFLARE);
+
+        assertThat(resolver.resolve(request("173.245.48.17", "cf-connecting-ip", "203.0.113.7"))).isEqualTo("203.0.113.7");
+        assertThat(resolver.resolve(request("2400:cb00:2049::1", "cf-connecting-ip", "2001:db8::5"))).isEqualTo("2001:db8::5");
+    }
+
+    @Test
+    void testForwardedRequestFromUntrustedPeerUsesConnectingAddress() {
+        resolver.configure("cf-connecting-ip", CLOUDFLARE);
+
+        assertThat(resolver.resolve(request("198.51.100.4", "cf-connecting-ip", "203.0.113.7"))).isEqualTo("198.51.100.4");
+    }
+
+    @Test
+    void testHopsLeftOfTheFirstUntrustedHopAreIgnored() {
+        resolver.configure("x-forwarded-for", "10.0.0.0/8");
+
+        assertThat(resolver.resolve(request("10.0.0.1", "x-forwarded-for", "6.6.6.6, 198.51.100.4, 10.0.0.2")))
+                .isEqualTo("198.51.100.4");
+        assertThat(resolver.resolve(request("10.0.0.1", "x-forwarded-for", "10.0.0.3"))).isEqualTo("10.0.0.3");
+        assertThat(resolver.resolve(request("10.0.0.1", "x-forwarded-for", "not-an-address"))).isEqualTo("10.0.0.1");
+    }
+
+    @Test
+    void testHeaderIsIgnoredWithoutTrustedProxies() {
+        resolver.configure("x-forwarded-for", "");
+
+        assertThat(resolver.resolve(request("127.0.0.1", "x-forwarded-for", "203.0.113.7"))).isEqualTo("127.0.0.1");
+    }
+
+    @Test
+    void testMalformedTrustedProxyIsRejected() {
+        assertThatThrownBy(() -> resolver.configure("x-forwarded-for", "10.0.0.0/33"))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> resolver.configure("x-forwarded-for", "proxy.example"))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private static MockHttpServletRequest request(
+            final String remoteAddress,
+            final String header,
+            final String value
+    ) {
+        final MockHttpServletRequest request = new MockHttpServletRequest();
+        request.setRemoteAddr(remoteAddress);
+        request.addHeader(header, value);
+        return request;
+    }
+
+}
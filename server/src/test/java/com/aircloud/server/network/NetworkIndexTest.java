@@ -0,0 +1,149 @@
+package com.aircloud.server.network;
+
+import com.aircloud.server.socket.DiscoveryMode;
+import com.aircloud.server.socket.Peer;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class NetworkIndexTest {
+
+    private final NetworkIndex index = new NetworkIndex();
+
+    @BeforeEach
+    void configurePrefixes() {
+        ReflectionTestUtils.setField(index, "IPV4_PREFIX", 24);
+        ReflectionTestUtils.setField(index, "IPV6_PREFIX", 64);
+    }
+
+    @Test
+    void testPeersSharingPrefixShareGroup() {
+        final Peer a = peer("100.64.12.7");
+        final Peer b = peer("::ffff:100.64.12.200");
+        final Peer c = peer("100.64.13.7");
+
+        index.add(a);
+        index.add(b);
+        index.add(c);
+
+        assertThat(a.getNetwork()).isSameAs(b.getNetwork());
+        assertThat(a.getNetwork().getKey()).isEqualTo("100.64.12.0/24");
+        assertThat(a.getNetwork().getPeers()).containsExactlyInAnyOrder(a, b);
+        assertThat(c.getNetwork()).isNotSameAs(a.getNetwork());
+    }
+
+    @Test
+    void testIpv6PeersAreGroupedByPrefix() {
+        final Peer a = peer("2001:db8:1:2:aaaa::1");
+        final Peer b = peer("[2001:db8:1:2:bbbb::2]:443");
+
+        index.add(a);
+        index.add(b);
+
+        assertThat(a.getNetwork()).isSameAs(b.getNetwork());
+        assertThat(a.getNetwork().getKey()).isEqualTo("2001:db8:1:2:0:0:0:0/64");
+    }
+
+    @Test
+    void testOnlyFirstForwardedAddressCounts() {
+        final NetworkAddress address = NetworkAddress.parse("198.51.100.4, 10.0.0.1");
+
+        assertThat(address).isEqualTo(NetworkAddress.parse("198.51.100.4:51000"));
+        assertThat(address.ipv4()).isTrue();
+        assertThat(NetworkAddress.parse("proxy.internal")).isNull();
+    }
+
+    @Test
+    void testEmptyGroupsAreRemoved() {
+        final Peer a = peer("203.0.113.7");
+
+        index.add(a);
+        final NetworkGroup group = a.getNetwork();
+        index.remove(a);
+
+        final Peer b = peer("203.0.113.8");
+        index.add(b);
+
+        assertThat(group.getPeers()).isEmpty();
+        assertThat(b.getNetwork()).isNotSameAs(group);
+    }
+
+    @Test
+    void testPeerMovesWithItsAddress() {
+        final Peer a = peer("203.0.113.7");
+        final Peer b = peer("198.51.100.4");
+
+        index.add(a);
+        index.add(b);
+
+        a.setIpAddress("198.51.100.9");
+
+        assertThat(index.update(a)).isTrue();
+        assertThat(b.getNetwork().getPeers()).containsExactlyInAnyOrder(a, b);
+    }
+
+    @Test
+    void testOnlyNetworkModePeersAreDiscoverable() {
+        final Peer a = peer("203.0.113.7");
+        final Peer b = peer("203.0.113.7");
+
+        index.add(a);
+        index.add(b);
+
+        b.setDiscoveryMode(DiscoveryMode.DIRECT);
+
+        assertThat(a.getNetwork().getDiscoverable()).as("until announced").containsExactlyInAnyOrder(a, b);
+
+        b.setAnnouncedDiscoveryMode(DiscoveryMode.DIRECT);
+        index.discoveryModeAnnounced(b);
+
+        assertThat(a.getNetwork().getPeers()).containsExactlyInAnyOrder(a, b);
+        assertThat(a.getNetwork().getDiscoverable()).containsExactly(a);
+
+        b.setAnnouncedDiscoveryMode(DiscoveryMode.NETWORK);
+        index.discoveryModeAnnounced(b);
+        b.setIpAddress("198.51.100.4");
+        index.update(b);
+
+        assertThat(a.getNetwork().getDiscoverable()).containsExactly(a);
+        assertThat(b.getNetwork().getDiscoverable()).containsExactly(b);
+    }
+
+    @Test
+    void testUnparsableAddressesAreGroupedVerbatim() {
+        final Peer a = peer("unknown");
+        final Peer b = peer("unknown");
+
+        index.add(a);
+        index.add(b);
+
+        assertThat(a.getNetwork()).isSameAs(b.getNetwork());
+        assertThat(a.getNetwork().getKey()).isEqualTo("unknown");
+    }
+
+    private static Peer peer(final String ipAddress) {
+        final Map<String, Object> attributes = new HashMap<>();
+        attributes.put("ipAddress", ipAddress);
+
+        final HttpHeaders headers = new HttpHeaders();
+        headers.add("user-agent", "Mozilla/5.0 (X11; Linux x86_64)");
+
+        final WebSocketSession session = mock(WebSocketSession.class);
+        when(session.getAttributes()).thenReturn(attributes);
+        when(session.getHandshakeHeaders()).thenReturn(headers);
+
+        final Peer peer = new Peer(session);
+        peer.setAnnouncedDiscoveryMode(DiscoveryMode.NETWORK);
+        return peer;
+    }
+
+}
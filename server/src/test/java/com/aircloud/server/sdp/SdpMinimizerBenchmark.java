@@ -0,0 +1,123 @@
+package com.aircloud.server.sdp;
+
+import com.aircloud.server.Benchmark;
+
+import java.util.List;
+
+/**
+ * Minimizes a Chrome audio, video and data channel offer and a Chrome
+ * data-channel-only offer, as the AirCloud client sends, inside a relayed
+ * OFFER frame.
+ * <p>
+ * Usage: {@code ./gradlew benchmark -Pbenchmark=com.aircloud.server.sdp.SdpMinimizerBenchmark}
+ */
+public class SdpMinimizerBenchmark {
+
+    private static final int WARMUP = 200_000;
+    private static final int ITERATIONS = 500_000;
+
+    private static final String ICE = "a=ice-ufrag:Qm9v\r\n"
+            + "a=ice-pwd:dGhpcyBpcyBub3QgYSBwYXNzd29yZA\r\n"
+            + "a=ice-options:trickle\r\n"
+            + "a=fingerprint:sha-256 7B:8B:F0:65:5F:78:E2:51:3B:AC:6F:F3:3F:46:1B:35:DC:B8:5F:64:1A:24:C2:43:F0:A1:58:D0:A1:2C:19:08\r\n"
+            + "a=setup:actpass\r\n";
+
+    public static void main(String[] args) {
+        final SdpMinimizer minimizer = new SdpMinimizer();
+
+        Benchmark.header(WARMUP, ITERATIONS);
+
+        for (List<String> offer : List.of(List.of("audio + video + data channel", mediaOffer()), List.of("data channel only", dataChannelOffer()))) {
+            final String json = "{\"type\":\"offer\",\"sdp\":\"" + escape(offer.get(1)) + "\"}";
+            final String frame = "{\"type\":\"OFFER\",\"data\":{\"peerId\":\"6f1c2d3e-4b5a-4c6d-8e7f-901a2b3c4d5e\",\"offer\":"
+                    + json + ",\"discoveryMode\":\"NETWORK\"}}";
+            final int start = frame.indexOf(json);
+            final int end = start + json.length();
+            final String minimized = minimizer.minimize(frame, start, end);
+
+            System.out.printf("%s, %d -> %d chars%n", offer.get(0), json.length(), minimized != null ? minimized.length() : json.length());
+            Benchmark.run("minimize", WARMUP, ITERATIONS, () -> minimizer.minimize(frame, start, end));
+        }
+    }
+
+    private static String mediaOffer() {
+        final StringBuilder sdp = new StringBuilder()
+                .append("v=0\r\no=- 4611731400430051336 2 IN IP4 127.0.0.1\r\ns=-\r\nt=0 0\r\n")
+                .append("a=group:BUNDLE 0 1 2\r\na=extmap-allow-mixed\r\n")
+                .append("a=msid-semantic: WMS 5c6bb0b6-1b6e-4a51-9a5b-7e4a6f0c8c33\r\n");
+
+        sdp.append("m=audio 9 UDP/TLS/RTP/SAVPF 111 63 9 0 8 13 110 126\r\nc=IN IP4 0.0.0.0\r\na=rtcp:9 IN IP4 0.0.0.0\r\n")
+                .append(ICE)
+                .append("a=mid:0\r\n")
+                .append("a=extmap:1 urn:ietf:params:rtp-hdrext:ssrc-audio-level\r\n")
+                .append("a=extmap:2 http://www.webrtc.org/experiments/rtp-hdrext/abs-send-time\r\n")
+                .append("a=extmap:3 http://www.ietf.org/id/draft-holmer-rmcat-transport-wide-cc-extensions-01\r\n")
+                .append("a=extmap:4 urn:ietf:params:rtp-hdrext:sdes:mid\r\n")
+                .append("a=sendrecv\r\na=msid:5c6bb0b6-1b6e-4a51-9a5b-7e4a6f0c8c33 0d1c0b9a-64a8-4b4e-9d0a-2f0ab8f9f7c1\r\na=rtcp-mux\r\n")
+                .append("a=rtpmap:111 opus/48000/2\r\na=rtcp-fb:111 transport-cc\r\na=fmtp:111 minptime=10;useinbandfec=1\r\n")
+                .append("a=rtpmap:63 red/48000/2\r\na=fmtp:63 111/111\r\na=rtpmap:9 G722/8000\r\na=rtpmap:0 PCMU/8000\r\n")
+                .append("a=rtpmap:8 PCMA/8000\r\na=rtpmap:13 CN/8000\r\na=rtpmap:110 telephone-event/48000\r\n")
+                .append("a=rtpmap:126 telephone-event/8000\r\na=ssrc:3127357932 cname:4TOk42mSjXCkVIa6\r\n");
+
+        final int[] payloadTypes = {96, 97, 102, 103, 104, 105, 106, 107, 108, 109, 127, 125, 39, 40, 45, 46, 98, 99, 100, 101, 112, 113, 116, 117, 118};
+        final String[] codecs = {"VP8", "rtx", "H264", "rtx", "H264", "rtx", "H264", "rtx", "H264", "rtx", "H264", "rtx", "H264", "rtx",
+                "AV1", "rtx", "VP9", "rtx", "VP9", "rtx", "H264", "rtx", "red", "rtx", "ulpfec"};
+
+        sdp.append("m=video 9 UDP/TLS/RTP/SAVPF");
+
+        for (int payloadType : payloadTypes) {
+            sdp.append(' ').append(payloadType);
+        }
+
+        sdp.append("\r\nc=IN IP4 0.0.0.0\r\na=rtcp:9 IN IP4 0.0.0.0\r\n")
+                .append(ICE)
+                .append("a=mid:1\r\n")
+                .append("a=extmap:14 urn:ietf:params:rtp-hdrext:toffset\r\n")
+                .append("a=extmap:2 http://www.webrtc.org/experiments/rtp-hdrext/abs-send-time\r\n")
+                .append("a=extmap:13 urn:3gpp:video-orientation\r\n")
+                .append("a=extmap:5 http://www.webrtc.org/experiments/rtp-hdrext/playout-delay\r\n")
+                .append("a=sendrecv\r\na=msid:5c6bb0b6-1b6e-4a51-9a5b-7e4a6f0c8c33 9f1e2d3c-4b5a-6978-8a9b-0c1d2e3f4a5b\r\n")
+                .append("a=rtcp-mux\r\na=rtcp-rsize\r\n");
+
+        for (int i = 0; i < payloadTypes.length; i++) {
+            sdp.append("a=rtpmap:").append(payloadTypes[i]).append(' ').append(codecs[i]).append("/90000\r\n");
+
+            if (codecs[i].equals("rtx")) {
+                sdp.append("a=fmtp:").append(payloadTypes[i]).append(" apt=").append(payloadTypes[i - 1]).append("\r\n");
+                continue;
+            }
+
+            for (String feedback : List.of("goog-remb", "transport-cc", "ccm fir", "nack", "nack pli")) {
+                sdp.append("a=rtcp-fb:").append(payloadTypes[i]).append(' ').append(feedback).append("\r\n");
+            }
+
+            if (codecs[i].equals("H264")) {
+                sdp.append("a=fmtp:").append(payloadTypes[i]).append(" level-asymmetry-allowed=1;packetization-mode=1;profile-level-id=42e01f\r\n");
+            }
+        }
+
+        sdp.append("a=ssrc-group:FID 2231627014 632943048\r\na=ssrc:2231627014 cname:4TOk42mSjXCkVIa6\r\n")
+                .append("a=ssrc:632943048 cname:4TOk42mSjXCkVIa6\r\n")
+                .append(application(2));
+
+        return sdp.toString();
+    }
+
+    private static String dataChannelOffer() {
+        return "v=0\r\no=- 4611731400430051336 2 IN IP4 127.0.0.1\r\ns=-\r\nt=0 0\r\n"
+                + "a=group:BUNDLE 0\r\na=extmap-allow-mixed\r\na=msid-semantic: WMS\r\n"
+                + application(0);
+    }
+
+    private static String application(final int mid) {
+        return "m=application 9 UDP/DTLS/SCTP webrtc-datachannel\r\nc=IN IP4 0.0.0.0\r\n"
+                + ICE
+                + "a=mid:" + mid + "\r\n"
+                + "a=sctp-port:5000\r\na=max-message-size:262144\r\n";
+    }
+
+    private static String escape(final String sdp) {
+        return sdp.replace("\r", "\\r").replace("\n", "\\n");
+    }
+
+}
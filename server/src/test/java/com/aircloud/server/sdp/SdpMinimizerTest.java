@@ -0,0 +1,99 @@
+package com.aircloud.server.sdp;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SdpMinimizerTest {
+
+    private static final String APPLICATION = "m=application 9 UDP/DTLS/SCTP webrtc-datachannel\r\n"
+            + "c=IN IP4 0.0.0.0\r\n"
+            + "a=ice-ufrag:Qm9v\r\n"
+            + "a=ice-pwd:dGhpcyBpcyBub3QgYSBwYXNzd29yZA\r\n"
+            + "a=ice-options:trickle\r\n"
+            + "a=fingerprint:sha-256 7B:8B:F0:65:5F:78:E2:51:3B:AC:6F:F3:3F:46:1B:35:DC:B8:5F:64:1A:24:C2:43:F0:A1:58:D0:A1:2C:19:08\r\n"
+            + "a=setup:actpass\r\n"
+            + "a=mid:2\r\n"
+            + "a=sctp-port:5000\r\n"
+            + "a=max-message-size:262144\r\n";
+
+    private static final String SDP = "v=0\r\n"
+            + "o=- 4611731400430051336 2 IN IP4 127.0.0.1\r\n"
+            + "s=-\r\n"
+            + "t=0 0\r\n"
+            + "a=group:BUNDLE 0 1 2\r\n"
+            + "a=extmap-allow-mixed\r\n"
+            + "a=msid-semantic: WMS stream\r\n"
+            + "m=audio 9 UDP/TLS/RTP/SAVPF 111 63 9 0 8\r\n"
+            + "c=IN IP4 0.0.0.0\r\n"
+            + "a=rtcp:9 IN IP4 0.0.0.0\r\n"
+            + "a=mid:0\r\n"
+            + "a=extmap:1 urn:ietf:params:rtp-hdrext:ssrc-audio-level\r\n"
+            + "a=sendrecv\r\n"
+            + "a=rtpmap:111 opus/48000/2\r\n"
+            + "a=fmtp:111 minptime=10;useinbandfec=1\r\n"
+            + "a=ssrc:3127357932 cname:4TOk42mSjXCkVIa6\r\n"
+            + "m=video 9 UDP/TLS/RTP/SAVPF 96 97\r\n"
+            + "c=IN IP4 0.0.0.0\r\n"
+            + "a=mid:1\r\n"
+            + "a=rtpmap:96 VP8/90000\r\n"
+            + "a=rtcp-fb:96 nack pli\r\n"
+            + "a=rtpmap:97 rtx/90000\r\n"
+            + "a=fmtp:97 apt=96\r\n"
+            + APPLICATION;
+
+    @Test
+    void testMediaSectionsAreRejectedInPlace() {
+        final String minimized = SdpMinimizer.minimizeSdp(SDP);
+
+        assertThat(minimized).isEqualTo("v=0\r\n"
+                + "o=- 4611731400430051336 2 IN IP4 127.0.0.1\r\n"
+                + "s=-\r\n"
+                + "t=0 0\r\n"
+                + "a=group:BUNDLE 2\r\n"
+                + "m=audio 0 UDP/TLS/RTP/SAVPF 111\r\n"
+                + "c=IN IP4 0.0.0.0\r\n"
+                + "a=mid:0\r\n"
+                + "m=video 0 UDP/TLS/RTP/SAVPF 96\r\n"
+                + "c=IN IP4 0.0.0.0\r\n"
+                + "a=mid:1\r\n"
+                + APPLICATION);
+        assertThat(mLines(minimized)).isEqualTo(mLines(SDP));
+    }
+
+    @Test
+    void testSdpIsRewrittenInsideItsJsonString() {
+        final String offer = "{\"type\":\"offer\",\"sdp\":\"" + escape(SDP) + "\"}";
+        final String frame = "{\"type\":\"OFFER\",\"data\":{\"offer\":" + offer + "}}";
+        final int start = frame.indexOf(offer);
+
+        final SdpMinimizer minimizer = new SdpMinimizer();
+        final String minimized = minimizer.minimize(frame, start, start + offer.length());
+
+        assertThat(minimized).isEqualTo("{\"type\":\"offer\",\"sdp\":\"" + escape(SdpMinimizer.minimizeSdp(SDP)) + "\"}");
+        assertThat(minimizer.getBytesIn()).isEqualTo(offer.length());
+        assertThat(minimizer.getBytesOut()).isEqualTo(minimized.length());
+    }
+
+    @Test
+    void testUnsupportedSdpIsRelayedUnchanged() {
+        final SdpMinimizer minimizer = new SdpMinimizer();
+        final String escaped = "{\"type\":\"offer\",\"sdp\":\"" + escape(SDP).replace("s=-", "s=\\\"quoted\\\"") + "\"}";
+        final String dataChannelOnly = "v=0\r\no=- 1 2 IN IP4 127.0.0.1\r\ns=-\r\nt=0 0\r\na=group:BUNDLE 2\r\n" + APPLICATION;
+
+        assertThat(minimizer.minimize(escaped, 0, escaped.length())).isNull();
+        assertThat(SdpMinimizer.minimizeSdp(SDP.substring(0, SDP.indexOf("m=application")))).as("no data channel").isNull();
+        assertThat(SdpMinimizer.minimizeSdp(dataChannelOnly)).as("nothing to remove").isNull();
+    }
+
+    private static long mLines(final String sdp) {
+        return Arrays.stream(sdp.split("\r\n")).filter(line -> line.startsWith("m=")).count();
+    }
+
+    private static String escape(final String sdp) {
+        return sdp.replace("\r", "\\r").replace("\n", "\\n");
+    }
+
+}
@@ -0,0 +1,211 @@
+package com.aircloud.server.socket;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import com.aircloud.server.socket.dto.request.RequestType;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+import org.slf4j.LoggerFactory;
+import org.springframework.web.socket.PongMessage;
+import org.springframework.web.socket.TextMessage;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Properties;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Drives the handler with in-memory sessions and fails when a signaling path
+ * allocates more per message than its budget in allocation-budgets.properties.
+ * Only allocations of the test thread are counted, so sharding stays off.
+ * <p>
+ * With {@code -PcalibrateAllocations} the budgets are not checked. Instead
+ * every path's measured allocation plus {@link #MARGIN} is written to
+ * build/allocation-budgets.properties, to be copied into the checked-in file.
+ */
+class AllocationBudgetTest {
+
+    private static final int WARMUP = 2000;
+    private static final int ITERATIONS = 1000;
+
+    /**
+     * Headroom over a calibrated measurement, as a fraction of it.
+     */
+    private static final double MARGIN = 0.1;
+
+    private static final boolean CALIBRATE = Boolean.getBoolean("allocation.calibrate");
+
+    private static final String IP_ADDRESS = "203.0.113.7";
+
+    private static final String SDP = "v=0\\r\\no=- 4611731400430051336 2 IN IP4 127.0.0.1\\r\\ns=-\\r\\nt=0 0\\r\\n"
+            + "a=group:BUNDLE 0\\r\\nm=application 9 UDP/DTLS/SCTP webrtc-datachannel\\r\\nc=IN IP4 0.0.0.0\\r\\n"
+            + "a=ice-ufrag:Qm9v\\r\\na=ice-pwd:dGhpcyBpcyBub3QgYSBwYXNzd29yZA\\r\\na=setup:actpass\\r\\na=mid:0\\r\\n"
+            + "a=sctp-port:5000\\r\\na=max-message-size:262144\\r\\n";
+
+    private static final com.sun.management.ThreadMXBean THREADS = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private static final Properties BUDGETS = new Properties();
+    private static final Properties CALIBRATED = new Properties();
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    private WebSocketHandler handler;
+
+    private FakeWebSocketSession sessionA;
+    private FakeWebSocketSession sessionB;
+
+    private String peerIdB;
+    private String connectionIdB;
+
+    @FunctionalInterface
+    private interface Operation {
+
+        void run() throws Exception;
+
+    }
+
+    @BeforeAll
+    static void loadBudgets() throws Exception {
+        try (InputStream in = AllocationBudgetTest.class.getResourceAsStream("/allocation-budgets.properties")) {
+            BUDGETS.load(in);
+        }
+
+        THREADS.setThreadAllocatedMemoryEnabled(true);
+        ((Logger) LoggerFactory.getLogger(org.slf4j.Logger.ROOT_LOGGER_NAME)).setLevel(Level.WARN);
+    }
+
+    @AfterAll
+    static void writeCalibratedBudgets() throws Exception {
+        if (!CALIBRATE) {
+            return;
+        }
+
+        final Path path = Path.of("build", "allocation-budgets.properties");
+        Files.createDirectories(path.getParent());
+
+        try (OutputStream out = Files.newOutputStream(path)) {
+            CALIBRATED.store(out, "Measured with " + Runtime.version() + " plus " + (int) (MARGIN * 100) + "%, see AllocationBudgetTest");
+        }
+    }
+
+    @BeforeEach
+    void connectPeers() throws Exception {
+        // Every iteration sends the same candidate, with deduplication only the first would be relayed
+        handler = WebSocketHandlerFixture.create(500, 0);
+
+        sessionA = new FakeWebSocketSession("a", IP_ADDRESS);
+        sessionB = new FakeWebSocketSession("b", IP_ADDRESS);
+
+        handler.afterConnectionEstablished(sessionA);
+        handler.handleTextMessage(sessionA, connect());
+
+        handler.afterConnectionEstablished(sessionB);
+        handler.handleTextMessage(sessionB, connect());
+
+        final JsonNode response = mapper.readTree(sessionB.getLastText());
+        peerIdB = response.get("peerId").asText();
+        connectionIdB = response.get("connectionId").asText();
+    }
+
+    @AfterEach
+    void stopHandler() {
+        handler.stopHeartbeat();
+    }
+
+    @ParameterizedTest
+    @EnumSource(RequestType.class)
+    void testRequestStaysWithinBudget(final RequestType type) throws Exception {
+        final TextMessage message = new TextMessage(frame(type));
+        final long sentBefore = sessionB.getSentMessages();
+
+        final long allocated = measure(() -> handler.handleTextMessage(sessionA, message));
+
+        if (type != RequestType.CONNECT && type != RequestType.DISCONNECT && type != RequestType.CHANGE_SETTINGS) {
+            assertThat(sessionB.getSentMessages()).as("%s reached peer B", type).isGreaterThan(sentBefore);
+        }
+
+        assertWithinBudget("request." + type, allocated);
+    }
+
+    @Test
+    void testPongStaysWithinBudget() throws Exception {
+        final PongMessage pong = new PongMessage();
+
+        assertWithinBudget("pong", measure(() -> handler.handlePongMessage(sessionA, pong)));
+    }
+
+    @Test
+    void testHeartbeatSweepStaysWithinBudget() throws Exception {
+        assertWithinBudget("heartbeat", measure(handler::sweep));
+    }
+
+    private static long measure(final Operation operation) throws Exception {
+        for (int i = 0; i < WARMUP; i++) {
+            operation.run();
+        }
+
+        final long before = THREADS.getCurrentThreadAllocatedBytes();
+
+        for (int i = 0; i < ITERATIONS; i++) {
+            operation.run();
+        }
+
+        return (THREADS.getCurrentThreadAllocatedBytes() - before) / ITERATIONS;
+    }
+
+    private static void assertWithinBudget(
+            final String path,
+            final long allocated
+    ) {
+        if (CALIBRATE) {
+            CALIBRATED.setProperty(path, String.valueOf((long) Math.ceil(allocated * (1 + MARGIN))));
+            return;
+        }
+
+        final String budget = BUDGETS.getProperty(path);
+
+        assertThat(budget).as("allocation budget of %s", path).isNotNull();
+        assertThat(allocated).as("bytes allocated per %s", path).isLessThanOrEqualTo(Long.parseLong(budget));
+    }
+
+    private static TextMessage connect() {
+        return new TextMessage("{\"type\":\"CONNECT\",\"data\":{\"name\":\"Quiet Otter\",\"discoveryMode\":\"NETWORK\"}}");
+    }
+
+    private String frame(final RequestType type) {
+        return switch (type) {
+            case CONNECT -> connect().getPayload();
+            case DISCONNECT -> "{\"type\":\"DISCONNECT\",\"data\":{}}";
+            case CHANGE_SETTINGS -> "{\"type\":\"CHANGE_SETTINGS\",\"data\":{\"name\":\"Quiet Otter\",\"discoveryMode\":\"NETWORK\"}}";
+            case PEER_CONNECT -> "{\"type\":\"PEER_CONNECT\",\"data\":{\"connectionId\":\"" + connectionIdB + "\"}}";
+            case PEER_RECONNECT -> "{\"type\":\"PEER_RECONNECT\",\"data\":{\"peerId\":\"" + peerIdB + "\"}}";
+            case OFFER -> "{\"type\":\"OFFER\",\"data\":{\"peerId\":\"" + peerIdB + "\",\"offer\":{\"type\":\"offer\",\"sdp\":\"" + SDP + "\"},\"discoveryMode\":\"NETWORK\"}}";
+            case ANSWER -> "{\"type\":\"ANSWER\",\"data\":{\"peerId\":\"" + peerIdB + "\",\"answer\":{\"type\":\"answer\",\"sdp\":\"" + SDP + "\"}}}";
+            case ICE_CANDIDATE -> iceCandidate();
+            case END_OF_ICE_CANDIDATES -> endOfIceCandidates();
+            case BATCH -> "{\"type\":\"BATCH\",\"data\":[" + iceCandidate() + "," + endOfIceCandidates() + "]}";
+        };
+    }
+
+    private String iceCandidate() {
+        return "{\"type\":\"ICE_CANDIDATE\",\"data\":{\"peerId\":\"" + peerIdB + "\",\"candidate\":{\"candidate\":"
+                + "\"candidate:842163049 1 udp 1677729535 198.51.100.4 54321 typ srflx raddr 0.0.0.0 rport 0 generation 0\","
+                + "\"sdpMid\":\"0\",\"sdpMLineIndex\":0}}}";
+    }
+
+    private String endOfIceCandidates() {
+        return "{\"type\":\"END_OF_ICE_CANDIDATES\",\"data\":{\"peerId\":\"" + peerIdB + "\"}}";
+    }
+
+}
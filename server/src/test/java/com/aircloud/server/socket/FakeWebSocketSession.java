@@ -0,0 +1,132 @@
+package com.aircloud.server.socket;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.socket.*;
+
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.security.Principal;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * In-memory session that only remembers the last message sent to it, so
+ * writing to it costs no allocation of its own.
+ */
+class FakeWebSocketSession implements WebSocketSession {
+
+    private static final String USER_AGENT = "Mozilla/5.0 (X11; Linux x86_64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/126.0 Safari/537.36";
+
+    private final String id;
+
+    private final Map<String, Object> attributes = new HashMap<>();
+
+    private final HttpHeaders handshakeHeaders = new HttpHeaders();
+
+    private volatile boolean open = true;
+
+    private volatile WebSocketMessage<?> lastMessage;
+
+    private volatile long sentMessages;
+
+    FakeWebSocketSession(String id, String ipAddress) {
+        this.id = id;
+        this.attributes.put("ipAddress", ipAddress);
+        this.attributes.put("userAgent", USER_AGENT);
+        this.handshakeHeaders.add("user-agent", USER_AGENT);
+    }
+
+    String getLastText() {
+        return lastMessage instanceof TextMessage text ? text.getPayload() : null;
+    }
+
+    long getSentMessages() {
+        return sentMessages;
+    }
+
+    @Override
+    public String getId() {
+        return id;
+    }
+
+    @Override
+    public URI getUri() {
+        return null;
+    }
+
+    @Override
+    public HttpHeaders getHandshakeHeaders() {
+        return handshakeHeaders;
+    }
+
+    @Override
+    public Map<String, Object> getAttributes() {
+        return attributes;
+    }
+
+    @Override
+    public Principal getPrincipal() {
+        return null;
+    }
+
+    @Override
+    public InetSocketAddress getLocalAddress() {
+        return null;
+    }
+
+    @Override
+    public InetSocketAddress getRemoteAddress() {
+        return null;
+    }
+
+    @Override
+    public String getAcceptedProtocol() {
+        return null;
+    }
+
+    @Override
+    public void setTextMessageSizeLimit(int messageSizeLimit) {
+    }
+
+    @Override
+    public int getTextMessageSizeLimit() {
+        return Integer.MAX_VALUE;
+    }
+
+    @Override
+    public void setBinaryMessageSizeLimit(int messageSizeLimit) {
+    }
+
+    @Override
+    public int getBinaryMessageSizeLimit() {
+        return Integer.MAX_VALUE;
+    }
+
+    @Override
+    public List<WebSocketExtension> getExtensions() {
+        return List.of();
+    }
+
+    @Override
+    public void sendMessage(WebSocketMessage<?> message) {
+        lastMessage = message;
+        sentMessages++;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return open;
+    }
+
+    @Override
+    public void close() {
+        open = false;
+    }
+
+    @Override
+    public void close(CloseStatus status) {
+        open = false;
+    }
+
+}
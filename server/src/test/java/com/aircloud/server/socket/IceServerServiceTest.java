@@ -0,0 +1,53 @@
+package com.aircloud.server.socket;
+
+import com.aircloud.server.turn.TurnEndpoint;
+import com.aircloud.server.turn.TurnPool;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Instant;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class IceServerServiceTest {
+
+    private final TurnEndpoint primary = new TurnEndpoint("stun:a:3478", "turn:a:3478");
+    private final TurnEndpoint secondary = new TurnEndpoint("stun:b:3478", "turn:b:3478");
+
+    private final TurnPool pool = new TurnPool();
+    private final IceServerService iceServerService = new IceServerService(pool);
+
+    @Test
+    void testUnhealthyServerIsStaleWhileAnotherIsHealthy() {
+        final Peer peer = assigned();
+
+        primary.setHealthy(false);
+
+        assertThat(iceServerService.isStale(peer, Instant.now())).isTrue();
+    }
+
+    @Test
+    void testUnhealthyServerIsKeptWhenWholePoolIsDown() {
+        final Peer peer = assigned();
+
+        primary.setHealthy(false);
+        secondary.setHealthy(false);
+
+        assertThat(iceServerService.isStale(peer, Instant.now())).isFalse();
+    }
+
+    private Peer assigned() {
+        ReflectionTestUtils.setField(pool, "SERVERS_PER_PEER", 2);
+        pool.configure(List.of(primary, secondary));
+
+        final Peer peer = mock(Peer.class);
+        when(peer.getIceServersVersion()).thenReturn(pool.getVersion());
+        when(peer.getIceServersExpiresAt()).thenReturn(Instant.now().plusSeconds(IceServerService.CREDENTIAL_TTL));
+        when(peer.getTurnEndpoint()).thenReturn(primary);
+        return peer;
+    }
+
+}
@@ -0,0 +1,149 @@
+package com.aircloud.server.socket;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static com.aircloud.server.socket.OverloadController.Level.DEFER;
+import static com.aircloud.server.socket.OverloadController.Level.NORMAL;
+import static com.aircloud.server.socket.OverloadController.Level.SHED;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class OverloadControllerTest {
+
+    private final OverloadController overload = new OverloadController();
+
+    @BeforeEach
+    void configureThresholds() {
+        ReflectionTestUtils.setField(overload, "DEFER_THRESHOLD", 25L);
+        ReflectionTestUtils.setField(overload, "SHED_THRESHOLD", 100L);
+    }
+
+    @Test
+    void testNormalDefersAtDeferThreshold() {
+        assertThat(overload.next(NORMAL, 24)).isEqualTo(NORMAL);
+        assertThat(overload.next(NORMAL, 25)).isEqualTo(DEFER);
+        assertThat(overload.next(NORMAL, 500)).as("one step per evaluation").isEqualTo(DEFER);
+    }
+
+    @Test
+    void testDeferShedsOnlyAtShedThreshold() {
+        assertThat(overload.next(DEFER, 25)).isEqualTo(DEFER);
+        assertThat(overload.next(DEFER, 99)).isEqualTo(DEFER);
+        assertThat(overload.next(DEFER, 100)).isEqualTo(SHED);
+    }
+
+    @Test
+    void testDeferRecoversUnderHalfDeferThreshold() {
+        assertThat(overload.next(DEFER, 12)).isEqualTo(DEFER);
+        assertThat(overload.next(DEFER, 11)).isEqualTo(NORMAL);
+    }
+
+    @Test
+    void testShedStepsDownUnderHalfShedThreshold() {
+        assertThat(overload.next(SHED, 100)).isEqualTo(SHED);
+        assertThat(overload.next(SHED, 50)).isEqualTo(SHED);
+        assertThat(overload.next(SHED, 49)).isEqualTo(DEFER);
+        assertThat(overload.next(SHED, 0)).as("one step per evaluation").isEqualTo(DEFER);
+    }
+
+    @Test
+    void testEvaluateAveragesQueueDelayAndSendLatency() {
+        record(30, 10);
+        overload.evaluate();
+        assertThat(overload.getLevel()).isEqualTo(DEFER);
+        assertThat(overload.getQueueDelay()).isEqualTo(TimeUnit.MILLISECONDS.toNanos(30));
+
+        record(10, 120);
+        overload.evaluate();
+        assertThat(overload.getLevel()).isEqualTo(SHED);
+
+        record(60, 10);
+        overload.evaluate();
+        assertThat(overload.getLevel()).as("above half of the shed threshold").isEqualTo(SHED);
+
+        record(40, 10);
+        overload.evaluate();
+        assertThat(overload.getLevel()).isEqualTo(DEFER);
+
+        overload.evaluate();
+        assertThat(overload.getLevel()).as("an idle second counts as no latency").isEqualTo(NORMAL);
+    }
+
+    @Test
+    void testPeerIsQueuedOncePerDeferral() {
+        final Peer a = peer();
+        final Peer b = peer();
+        final List<Object> sent = new ArrayList<>();
+
+        ReflectionTestUtils.setField(overload, "level", DEFER);
+        overload.admitBroadcast(a, "a1");
+        overload.admitBroadcast(a, "a2");
+        overload.admitBroadcast(b, "b1");
+        overload.admitBroadcast(a, "a3");
+
+        assertThat(pending()).containsExactly(a, b);
+
+        overload.drainDeferred((peer, message) -> sent.add(message));
+        assertThat(sent).containsExactly("a1", "a2", "a3", "b1");
+        assertThat(overload.getPendingBroadcasts()).isZero();
+
+        overload.admitBroadcast(a, "a4");
+        assertThat(pending()).as("queued again once drained").containsExactly(a);
+    }
+
+    @Test
+    void testFlushSendsDeferredAheadOfDirectMessage() {
+        final Peer a = peer();
+        final List<Object> sent = new ArrayList<>();
+
+        ReflectionTestUtils.setField(overload, "level", SHED);
+        overload.flushDeferred(a, (peer, message) -> sent.add(message));
+        assertThat(sent).as("nothing deferred").isEmpty();
+
+        ReflectionTestUtils.setField(overload, "level", DEFER);
+        overload.admitBroadcast(a, "disconnect");
+        ReflectionTestUtils.setField(overload, "level", SHED);
+
+        overload.flushDeferred(a, (peer, message) -> sent.add(message));
+        sent.add("relay");
+        assertThat(sent).as("flushed even while shedding").containsExactly("disconnect", "relay");
+
+        ReflectionTestUtils.setField(overload, "level", NORMAL);
+        overload.drainDeferred((peer, message) -> sent.add(message));
+        assertThat(sent).containsExactly("disconnect", "relay");
+        assertThat(a.getOutboxScheduled()).isFalse();
+    }
+
+    @SuppressWarnings("unchecked")
+    private Queue<Peer> pending() {
+        return (Queue<Peer>) ReflectionTestUtils.getField(overload, "pending");
+    }
+
+    private static Peer peer() {
+        final Peer peer = mock(Peer.class);
+        final Queue<Object> outbox = new ConcurrentLinkedQueue<>();
+        final AtomicBoolean scheduled = new AtomicBoolean();
+        when(peer.getOutbox()).thenReturn(outbox);
+        when(peer.getOutboxScheduled()).thenReturn(scheduled);
+        return peer;
+    }
+
+    private void record(
+            final long queueDelay,
+            final long sendLatency
+    ) {
+        overload.recordQueueDelay(TimeUnit.MILLISECONDS.toNanos(queueDelay));
+        overload.recordSendLatency(TimeUnit.MILLISECONDS.toNanos(sendLatency));
+    }
+
+}
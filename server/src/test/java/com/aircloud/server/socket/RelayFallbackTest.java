@@ -0,0 +1,116 @@
+package com.aircloud.server.socket;
+
+import com.aircloud.server.jfr.RelayEvent;
+import com.aircloud.server.socket.dto.request.BaseRequest;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.socket.TextMessage;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Relay requests handled through their DTO instead of the streaming path,
+ * which the handler falls back to for frames it can't relay as is.
+ */
+class RelayFallbackTest {
+
+    private static final String IP_ADDRESS = "203.0.113.7";
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    @TempDir
+    private Path directory;
+
+    private WebSocketHandler handler;
+
+    private FakeWebSocketSession sessionA;
+    private FakeWebSocketSession sessionB;
+
+    private String peerIdB;
+
+    @BeforeEach
+    void connectPeers() throws Exception {
+        handler = WebSocketHandlerFixture.create(500, 30);
+        sessionA = new FakeWebSocketSession("a", IP_ADDRESS);
+        sessionB = new FakeWebSocketSession("b", IP_ADDRESS);
+
+        connect(sessionA);
+        peerIdB = connect(sessionB);
+    }
+
+    @AfterEach
+    void stopHandler() {
+        handler.stopHeartbeat();
+    }
+
+    @Test
+    void testFallbackRelayEmitsRelayEvent() throws Exception {
+        final List<RecordedEvent> events;
+
+        try (Recording recording = new Recording()) {
+            recording.enable(RelayEvent.class).withThreshold(Duration.ZERO);
+            recording.start();
+
+            handleRequest(sessionA, "{\"type\":\"OFFER\",\"data\":{\"peerId\":\"" + peerIdB
+                    + "\",\"offer\":{\"type\":\"offer\",\"sdp\":\"v=0\\r\\n\"},\"discoveryMode\":\"NETWORK\"}}");
+
+            recording.stop();
+            recording.dump(directory.resolve("relay.jfr"));
+            events = RecordingFile.readAllEvents(directory.resolve("relay.jfr"));
+        }
+
+        assertThat(events).hasSize(1);
+        assertThat(events.getFirst().getString("type")).isEqualTo("OFFER");
+        assertThat(events.getFirst().getBoolean("delivered")).isTrue();
+        assertThat(events.getFirst().getInt("size")).isPositive();
+    }
+
+    @Test
+    void testCandidateRelayedOnEitherPathIsDeduplicated() throws Exception {
+        final String candidate = "\"candidate\":\"candidate:842163049 1 udp 1677729535 198.51.100.4 54321 typ srflx\"";
+        final long sent = sessionB.getSentMessages();
+
+        handler.handleTextMessage(sessionA, new TextMessage("{\"type\":\"ICE_CANDIDATE\",\"data\":{\"peerId\":\"" + peerIdB
+                + "\",\"candidate\":{ " + candidate + ", \"sdpMid\": \"0\" }}}"));
+        assertThat(sessionB.getSentMessages()).as("relayed on the streaming path").isEqualTo(sent + 1);
+
+        handleRequest(sessionA, "{\"type\":\"ICE_CANDIDATE\",\"data\":{\"peerId\":\"" + peerIdB
+                + "\",\"candidate\":{\"sdpMid\":\"0\"," + candidate + "}}}");
+        assertThat(sessionB.getSentMessages()).as("duplicate dropped on the fallback").isEqualTo(sent + 1);
+    }
+
+    /**
+     * Handle a frame the way the handler does when the streaming path
+     * doesn't take it.
+     */
+    private void handleRequest(
+            final FakeWebSocketSession session,
+            final String frame
+    ) throws Exception {
+        final Object peer = ReflectionTestUtils.invokeMethod(handler, "findPeerBySession", session);
+
+        ReflectionTestUtils.invokeMethod(handler, "handleRequest",
+                session, peer, mapper.readValue(frame, BaseRequest.class), System.nanoTime());
+    }
+
+    private String connect(final FakeWebSocketSession session) throws Exception {
+        handler.afterConnectionEstablished(session);
+        handler.handleTextMessage(session, new TextMessage(
+                "{\"type\":\"CONNECT\",\"data\":{\"name\":\"Quiet Otter\",\"discoveryMode\":\"NETWORK\"}}"
+        ));
+
+        return mapper.readTree(session.getLastText()).get("peerId").asText();
+    }
+
+}
@@ -0,0 +1,101 @@
+package com.aircloud.server.socket;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class SessionReaperTest {
+
+    private static final long NOW = 1_700_000_000_000L;
+
+    private static final long TIMEOUT = 1000L * WebSocketHandler.HEARTBEAT_PERIOD * 3;
+
+    private final SessionReaper reaper = new SessionReaper();
+
+    @BeforeEach
+    void configureReaper() {
+        ReflectionTestUtils.setField(reaper, "MAX_MISSED_PONGS", 3);
+    }
+
+    @Test
+    void testPeersExpireInDeadlineOrder() {
+        final Peer late = peer(NOW - 10_000);
+        final Peer early = peer(NOW - 30_000);
+        final Peer middle = peer(NOW - 20_000);
+
+        reaper.touch(late);
+        reaper.touch(early);
+        reaper.touch(middle);
+
+        assertThat(reaper.collectExpired(NOW + TIMEOUT - 30_001)).isEmpty();
+        assertThat(reaper.collectExpired(NOW + TIMEOUT - 20_000)).containsExactly(early, middle);
+        assertThat(reaper.collectExpired(NOW + TIMEOUT)).containsExactly(late);
+        assertThat(reaper.getTrackedSessions()).isZero();
+        assertThat(reaper.getReapedIdleSessions()).isEqualTo(3);
+    }
+
+    @Test
+    void testTouchMovesDeadline() {
+        final Peer peer = peer(NOW);
+        reaper.touch(peer);
+
+        peer.setLastSeen(Instant.ofEpochMilli(NOW + 10_000));
+        reaper.touch(peer);
+
+        assertThat(reaper.collectExpired(NOW + TIMEOUT)).isEmpty();
+        assertThat(reaper.getTrackedSessions()).isEqualTo(1);
+        assertThat(reaper.collectExpired(NOW + TIMEOUT + 10_000)).containsExactly(peer);
+    }
+
+    @Test
+    void testTouchWithinGranularityKeepsDeadline() {
+        final Peer peer = peer(NOW);
+        reaper.touch(peer);
+
+        peer.setLastSeen(Instant.ofEpochMilli(NOW + 500));
+        reaper.touch(peer);
+
+        assertThat(reaper.collectExpired(NOW + TIMEOUT)).containsExactly(peer);
+    }
+
+    @Test
+    void testUntrackedPeerIsNotReaped() {
+        final Peer kept = peer(NOW);
+        final Peer closed = peer(NOW);
+
+        reaper.touch(kept);
+        reaper.touch(closed);
+        reaper.untrack(closed);
+        reaper.untrack(closed);
+
+        assertThat(reaper.getTrackedSessions()).isEqualTo(1);
+        assertThat(reaper.collectExpired(NOW + TIMEOUT)).containsExactly(kept);
+    }
+
+    private static Peer peer(final long lastSeen) {
+        final Map<String, Object> attributes = new HashMap<>();
+        attributes.put("ipAddress", "203.0.113.7");
+
+        final HttpHeaders headers = new HttpHeaders();
+        headers.add("user-agent", "Mozilla/5.0 (X11; Linux x86_64)");
+
+        final WebSocketSession session = mock(WebSocketSession.class);
+        when(session.getAttributes()).thenReturn(attributes);
+        when(session.getHandshakeHeaders()).thenReturn(headers);
+
+        final Peer peer = new Peer(session);
+        peer.setLastSeen(Instant.ofEpochMilli(lastSeen));
+        return peer;
+    }
+
+}
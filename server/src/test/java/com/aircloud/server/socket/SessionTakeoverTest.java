@@ -0,0 +1,94 @@
+package com.aircloud.server.socket;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.socket.TextMessage;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SessionTakeoverTest {
+
+    private static final String IP_ADDRESS = "203.0.113.7";
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    private WebSocketHandler handler;
+
+    @BeforeEach
+    void createHandler() {
+        handler = WebSocketHandlerFixture.create(500, 30);
+    }
+
+    @AfterEach
+    void stopHandler() {
+        handler.stopHeartbeat();
+    }
+
+    @Test
+    void testNewerSessionTakesOverPeerId() throws Exception {
+        final FakeWebSocketSession stale = new FakeWebSocketSession("stale", IP_ADDRESS);
+        final JsonNode connected = connect(stale, null);
+
+        final FakeWebSocketSession neighbour = new FakeWebSocketSession("neighbour", IP_ADDRESS);
+        connect(neighbour, null);
+
+        final FakeWebSocketSession fresh = new FakeWebSocketSession("fresh", IP_ADDRESS);
+        final JsonNode restored = connect(fresh, connected.get("authToken").asText());
+
+        assertThat(restored.get("peerId").asText()).isEqualTo(connected.get("peerId").asText());
+        assertThat(restored.get("connectionId").asText()).isEqualTo(connected.get("connectionId").asText());
+        assertThat(stale.isOpen()).isFalse();
+
+        final long sentToNeighbour = neighbour.getSentMessages();
+        handler.afterConnectionClosed(stale, WebSocketHandler.SESSION_TAKEN_OVER);
+
+        assertThat(neighbour.getSentMessages()).as("neighbour told about a disconnect").isEqualTo(sentToNeighbour);
+
+        final long sentToFresh = fresh.getSentMessages();
+        handler.handleTextMessage(neighbour, new TextMessage(
+                "{\"type\":\"END_OF_ICE_CANDIDATES\",\"data\":{\"peerId\":\"" + restored.get("peerId").asText() + "\"}}"
+        ));
+
+        assertThat(fresh.getSentMessages()).as("relay reached the new session").isGreaterThan(sentToFresh);
+    }
+
+    @Test
+    void testTokenOfTakenOverSessionIsNoLongerValid() throws Exception {
+        final FakeWebSocketSession first = new FakeWebSocketSession("first", IP_ADDRESS);
+        final String token = connect(first, null).get("authToken").asText();
+
+        final FakeWebSocketSession second = new FakeWebSocketSession("second", IP_ADDRESS);
+        final JsonNode takenOver = connect(second, token);
+
+        final FakeWebSocketSession third = new FakeWebSocketSession("third", IP_ADDRESS);
+        final JsonNode replayed = connect(third, token);
+
+        assertThat(replayed.get("peerId").asText()).isNotEqualTo(takenOver.get("peerId").asText());
+        assertThat(second.isOpen()).isTrue();
+    }
+
+    @Test
+    void testTokenOfUnknownPeerStartsNewIdentity() throws Exception {
+        final FakeWebSocketSession session = new FakeWebSocketSession("session", IP_ADDRESS);
+
+        assertThat(connect(session, "not.a-token").get("peerId").isTextual()).isTrue();
+    }
+
+    private JsonNode connect(
+            final FakeWebSocketSession session,
+            final String authToken
+    ) throws Exception {
+        final String token = authToken != null ? ",\"authToken\":\"" + authToken + "\"" : "";
+
+        handler.afterConnectionEstablished(session);
+        handler.handleTextMessage(session, new TextMessage(
+                "{\"type\":\"CONNECT\",\"data\":{\"name\":\"Quiet Otter\",\"discoveryMode\":\"NETWORK\"" + token + "}}"
+        ));
+
+        return mapper.readTree(session.getLastText());
+    }
+
+}
@@ -0,0 +1,171 @@
+package com.aircloud.server.socket;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.socket.TextMessage;
+
+import java.util.function.BooleanSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SettingsPropagationTest {
+
+    private static final int DEBOUNCE = 100;
+
+    private static final String IP_ADDRESS = "203.0.113.7";
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    private WebSocketHandler handler;
+
+    private FakeWebSocketSession sessionA;
+    private FakeWebSocketSession sessionB;
+
+    private String peerIdA;
+
+    @BeforeEach
+    void connectPeers() throws Exception {
+        handler = WebSocketHandlerFixture.create(DEBOUNCE, 30);
+
+        sessionA = new FakeWebSocketSession("a", IP_ADDRESS);
+        sessionB = new FakeWebSocketSession("b", IP_ADDRESS);
+
+        handler.afterConnectionEstablished(sessionA);
+        handler.handleTextMessage(sessionA, settings("CONNECT", "Quiet Otter", DiscoveryMode.NETWORK));
+        peerIdA = mapper.readTree(sessionA.getLastText()).get("peerId").asText();
+
+        handler.afterConnectionEstablished(sessionB);
+        handler.handleTextMessage(sessionB, settings("CONNECT", "Brave Heron", DiscoveryMode.NETWORK));
+    }
+
+    @AfterEach
+    void stopHandler() {
+        handler.stopHeartbeat();
+    }
+
+    @Test
+    void testRapidRenamesAreCoalesced() throws Exception {
+        final long sentBefore = sessionB.getSentMessages();
+
+        handler.handleTextMessage(sessionA, settings("CHANGE_SETTINGS", "Quiet", DiscoveryMode.NETWORK));
+        handler.handleTextMessage(sessionA, settings("CHANGE_SETTINGS", "Quiet Ot", DiscoveryMode.NETWORK));
+        handler.handleTextMessage(sessionA, settings("CHANGE_SETTINGS", "Quiet Owl", DiscoveryMode.NETWORK));
+
+        awaitMessage(sessionB, sentBefore);
+        Thread.sleep(3L * DEBOUNCE);
+
+        final JsonNode update = mapper.readTree(sessionB.getLastText());
+
+        assertThat(sessionB.getSentMessages()).isEqualTo(sentBefore + 1);
+        assertThat(update.get("type").asText()).isEqualTo("PEER_UPDATE");
+        assertThat(update.get("peerId").asText()).isEqualTo(peerIdA);
+        assertThat(update.get("name").asText()).isEqualTo("Quiet Owl");
+    }
+
+    @Test
+    void testSwitchingDiscoveryModeLeavesAndRejoinsGroup() throws Exception {
+        long sentBefore = sessionB.getSentMessages();
+        handler.handleTextMessage(sessionA, settings("CHANGE_SETTINGS", "Quiet Otter", DiscoveryMode.DIRECT));
+        awaitMessage(sessionB, sentBefore);
+
+        assertThat(mapper.readTree(sessionB.getLastText()).get("type").asText()).isEqualTo("DISCONNECT");
+
+        sentBefore = sessionB.getSentMessages();
+        handler.handleTextMessage(sessionA, settings("CHANGE_SETTINGS", "Quiet Otter", DiscoveryMode.NETWORK));
+        awaitMessage(sessionB, sentBefore);
+
+        final JsonNode offer = mapper.readTree(sessionB.getLastText());
+
+        assertThat(offer.get("type").asText()).isEqualTo("OFFER");
+        assertThat(offer.get("peerId").asText()).isEqualTo(peerIdA);
+    }
+
+    @Test
+    void testSwitchingBackBeforeDebounceSendsNothing() throws Exception {
+        final long sentBefore = sessionB.getSentMessages();
+
+        handler.handleTextMessage(sessionA, settings("CHANGE_SETTINGS", "Quiet Otter", DiscoveryMode.DIRECT));
+        handler.handleTextMessage(sessionA, settings("CHANGE_SETTINGS", "Quiet Otter", DiscoveryMode.NETWORK));
+        Thread.sleep(3L * DEBOUNCE);
+
+        assertThat(sessionB.getSentMessages()).isEqualTo(sentBefore);
+    }
+
+    @Test
+    void testPendingNetworkRoundTripIsNotOfferedToNewNeighbour() throws Exception {
+        leaveGroup();
+
+        final long sentBefore = sessionA.getSentMessages();
+
+        handler.handleTextMessage(sessionA, settings("CHANGE_SETTINGS", "Quiet Otter", DiscoveryMode.NETWORK));
+        joinNeighbour();
+        handler.handleTextMessage(sessionA, settings("CHANGE_SETTINGS", "Quiet Otter", DiscoveryMode.DIRECT));
+        Thread.sleep(3L * DEBOUNCE);
+
+        assertThat(sessionA.getSentMessages()).as("offers to a peer that never announced NETWORK").isEqualTo(sentBefore);
+    }
+
+    @Test
+    void testNeighbourJoiningBeforeFlushIsOfferedOnce() throws Exception {
+        leaveGroup();
+
+        final long sentBefore = sessionA.getSentMessages();
+
+        handler.handleTextMessage(sessionA, settings("CHANGE_SETTINGS", "Quiet Otter", DiscoveryMode.NETWORK));
+        final FakeWebSocketSession sessionC = joinNeighbour();
+        final long sentBeforeFlush = sessionC.getSentMessages();
+
+        assertThat(sessionA.getSentMessages()).isEqualTo(sentBefore);
+
+        awaitMessage(sessionC, sentBeforeFlush);
+        Thread.sleep(3L * DEBOUNCE);
+
+        final JsonNode offer = mapper.readTree(sessionC.getLastText());
+
+        assertThat(sessionC.getSentMessages()).isEqualTo(sentBeforeFlush + 1);
+        assertThat(offer.get("type").asText()).isEqualTo("OFFER");
+        assertThat(offer.get("peerId").asText()).isEqualTo(peerIdA);
+    }
+
+    /**
+     * Switch peer A to DIRECT and wait until peer B was told.
+     */
+    private void leaveGroup() throws Exception {
+        final long sentBefore = sessionB.getSentMessages();
+        handler.handleTextMessage(sessionA, settings("CHANGE_SETTINGS", "Quiet Otter", DiscoveryMode.DIRECT));
+        awaitMessage(sessionB, sentBefore);
+    }
+
+    private FakeWebSocketSession joinNeighbour() throws Exception {
+        final FakeWebSocketSession sessionC = new FakeWebSocketSession("c", IP_ADDRESS);
+        handler.afterConnectionEstablished(sessionC);
+        handler.handleTextMessage(sessionC, settings("CONNECT", "Swift Lynx", DiscoveryMode.NETWORK));
+        return sessionC;
+    }
+
+    private static void awaitMessage(
+            final FakeWebSocketSession session,
+            final long sentBefore
+    ) throws InterruptedException {
+        final BooleanSupplier received = () -> session.getSentMessages() > sentBefore;
+        final long deadline = System.currentTimeMillis() + 20L * DEBOUNCE;
+
+        while (!received.getAsBoolean() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+
+        assertThat(received.getAsBoolean()).as("message received within %d ms", 20 * DEBOUNCE).isTrue();
+    }
+
+    private static TextMessage settings(
+            final String type,
+            final String name,
+            final DiscoveryMode discoveryMode
+    ) {
+        return new TextMessage("{\"type\":\"" + type + "\",\"data\":{\"name\":\"" + name + "\",\"discoveryMode\":\"" + discoveryMode + "\"}}");
+    }
+
+}
@@ -0,0 +1,115 @@
+package com.aircloud.server.socket;
+
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+/**
+ * Dispatches inbound events, a CRC32 over a 2 KB frame standing in for
+ * parsing and relaying a message, from several container threads across many
+ * sessions, and reports the throughput for increasing shard counts. Shard
+ * count 0 runs the events inline on the container threads, as the handler
+ * does with sharding disabled.
+ * <p>
+ * Scaling can only show with at least as many free cores as shards, the
+ * number of available processors is printed first.
+ * <p>
+ * Usage: {@code ./gradlew benchmark -Pbenchmark=com.aircloud.server.socket.ShardExecutorBenchmark}
+ */
+public class ShardExecutorBenchmark {
+
+    private static final int SESSIONS = 1024;
+    private static final int PRODUCERS = 4;
+    private static final int EVENTS_PER_PRODUCER = 250_000;
+    private static final int ROUNDS = 3;
+
+    private static final byte[] FRAME = new byte[2048];
+
+    private static volatile long sink;
+
+    public static void main(String[] args) throws Exception {
+        final int processors = Runtime.getRuntime().availableProcessors();
+        final List<WebSocketSession> sessions = new ArrayList<>();
+
+        for (int i = 0; i < SESSIONS; i++) {
+            final WebSocketSession session = mock(WebSocketSession.class, withSettings().stubOnly());
+            when(session.getId()).thenReturn(Integer.toHexString(i));
+            sessions.add(session);
+        }
+
+        System.out.printf("%s %s, %d available processor(s), %d container threads, %d sessions, %d events per round%n",
+                System.getProperty("java.vm.name"), Runtime.version(), processors, PRODUCERS, SESSIONS, PRODUCERS * EVENTS_PER_PRODUCER);
+
+        final List<Integer> counts = new ArrayList<>(List.of(0, 1, 2, 4));
+
+        if (!counts.contains(processors)) {
+            counts.add(processors);
+        }
+
+        for (int count : counts) {
+            for (int round = 0; round < ROUNDS; round++) {
+                final double perSecond = run(count, sessions);
+
+                if (round == ROUNDS - 1) {
+                    System.out.printf("  %-24s %12.0f events/s%n", count == 0 ? "inline" : count + " shard(s)", perSecond);
+                }
+            }
+        }
+    }
+
+    private static double run(
+            final int count,
+            final List<WebSocketSession> sessions
+    ) throws Exception {
+        final ShardExecutor shards = new ShardExecutor();
+        ReflectionTestUtils.setField(shards, "ENABLED", count > 0);
+        ReflectionTestUtils.setField(shards, "COUNT", count);
+        ReflectionTestUtils.setField(shards, "MAILBOX_CAPACITY", 4096);
+        ReflectionTestUtils.setField(shards, "MAILBOX_WAIT", TimeUnit.SECONDS.toMillis(10));
+        shards.start();
+
+        final CountDownLatch done = new CountDownLatch(PRODUCERS * EVENTS_PER_PRODUCER);
+        final List<Thread> producers = new ArrayList<>();
+        final long startedAt = System.nanoTime();
+
+        for (int p = 0; p < PRODUCERS; p++) {
+            final int offset = p;
+
+            producers.add(Thread.ofPlatform().start(() -> {
+                try {
+                    for (int i = 0; i < EVENTS_PER_PRODUCER; i++) {
+                        shards.dispatch(sessions.get((offset + i * PRODUCERS) % SESSIONS), () -> {
+                            final CRC32 crc = new CRC32();
+                            crc.update(FRAME);
+                            sink = crc.getValue();
+                            done.countDown();
+                        });
+                    }
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+            }));
+        }
+
+        for (Thread producer : producers) {
+            producer.join();
+        }
+
+        done.await();
+
+        final long elapsed = System.nanoTime() - startedAt;
+        shards.stop();
+
+        return PRODUCERS * EVENTS_PER_PRODUCER * 1e9 / elapsed;
+    }
+
+}
@@ -0,0 +1,152 @@
+package com.aircloud.server.socket;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.ConcurrentWebSocketSessionDecorator;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ShardExecutorTest {
+
+    private final ShardExecutor shards = new ShardExecutor();
+
+    @AfterEach
+    void stopShards() {
+        shards.stop();
+    }
+
+    @Test
+    void testEventsOfSessionRunInOrderOnOneShard() throws Exception {
+        start(4, 1024);
+
+        final WebSocketSession session = session("a");
+        final List<Integer> order = new CopyOnWriteArrayList<>();
+        final Set<Thread> threads = ConcurrentHashMap.newKeySet();
+        final CountDownLatch done = new CountDownLatch(100);
+
+        shards.register(session);
+
+        for (int i = 0; i < 100; i++) {
+            final int index = i;
+
+            shards.dispatch(session, () -> {
+                order.add(index);
+                threads.add(Thread.currentThread());
+                done.countDown();
+            });
+        }
+
+        assertThat(done.await(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(order).isEqualTo(IntStream.range(0, 100).boxed().toList());
+        assertThat(threads).hasSize(1);
+        assertThat(shards.writerOf(session)).isInstanceOf(ConcurrentWebSocketSessionDecorator.class);
+    }
+
+    @Test
+    void testTaskOnShardOfSessionRunsInline() throws Exception {
+        start(2, 16);
+
+        final WebSocketSession session = session("a");
+        final AtomicBoolean inline = new AtomicBoolean();
+        final CountDownLatch done = new CountDownLatch(1);
+
+        final AtomicBoolean ranBeforeReturn = new AtomicBoolean();
+
+        shards.dispatch(session, () -> {
+            shards.execute(session, () -> inline.set(true));
+            ranBeforeReturn.set(inline.get());
+            done.countDown();
+        });
+
+        assertThat(done.await(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(ranBeforeReturn).isTrue();
+    }
+
+    @Test
+    void testFullMailboxClosesSessionAsOverloaded() throws Exception {
+        start(1, 1);
+
+        final WebSocketSession session = session("a");
+        final CountDownLatch running = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+
+        shards.dispatch(session, () -> {
+            running.countDown();
+            release.await();
+        });
+        assertThat(running.await(5, TimeUnit.SECONDS)).isTrue();
+
+        shards.dispatch(session, () -> {
+        });
+        verify(session, never()).close(CloseStatus.SERVICE_OVERLOAD);
+
+        shards.dispatch(session, () -> {
+        });
+        verify(session).close(CloseStatus.SERVICE_OVERLOAD);
+
+        release.countDown();
+    }
+
+    @Test
+    void testInternalTasksAreAcceptedWhenMailboxIsFull() throws Exception {
+        start(1, 1);
+
+        final WebSocketSession session = session("a");
+        final CountDownLatch running = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(2);
+
+        shards.dispatch(session, () -> {
+            running.countDown();
+            release.await();
+        });
+        assertThat(running.await(5, TimeUnit.SECONDS)).isTrue();
+
+        shards.dispatch(session, done::countDown);
+        shards.execute(session, done::countDown);
+        release.countDown();
+
+        assertThat(done.await(5, TimeUnit.SECONDS)).isTrue();
+        verify(session, never()).close(CloseStatus.SERVICE_OVERLOAD);
+    }
+
+    private void start(
+            final int count,
+            final int mailboxCapacity
+    ) {
+        ReflectionTestUtils.setField(shards, "ENABLED", true);
+        ReflectionTestUtils.setField(shards, "COUNT", count);
+        ReflectionTestUtils.setField(shards, "MAILBOX_CAPACITY", mailboxCapacity);
+        ReflectionTestUtils.setField(shards, "MAILBOX_WAIT", 20L);
+        ReflectionTestUtils.setField(shards, "SEND_TIME_LIMIT", 5000);
+        ReflectionTestUtils.setField(shards, "BUFFER_SIZE_LIMIT", 512 * 1024);
+        shards.start();
+    }
+
+    private static WebSocketSession session(final String id) {
+        final Map<String, Object> attributes = new ConcurrentHashMap<>();
+
+        final WebSocketSession session = mock(WebSocketSession.class);
+        when(session.getId()).thenReturn(id);
+        when(session.getAttributes()).thenReturn(attributes);
+        return session;
+    }
+
+}
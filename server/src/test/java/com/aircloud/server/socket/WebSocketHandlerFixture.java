@@ -0,0 +1,75 @@
+package com.aircloud.server.socket;
+
+import com.aircloud.server.capture.SignalCapture;
+import com.aircloud.server.ice.CandidateFilter;
+import com.aircloud.server.logging.LogSampler;
+import com.aircloud.server.network.NetworkIndex;
+import com.aircloud.server.sdp.SdpMinimizer;
+import com.aircloud.server.security.TurnCredentialService;
+import com.aircloud.server.stats.NegotiationTracker;
+import com.aircloud.server.stats.RegistryStats;
+import com.aircloud.server.turn.TurnEndpoint;
+import com.aircloud.server.turn.TurnPool;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+
+/**
+ * Handler wired by hand with its collaborators configured as in
+ * application.yml, without sharding and without starting the heartbeat.
+ */
+final class WebSocketHandlerFixture {
+
+    private WebSocketHandlerFixture() {
+    }
+
+    /**
+     * @param settingsDebounce milliseconds before settings are announced
+     * @param dedupWindow      seconds a relayed ICE candidate is remembered, 0 relays every candidate
+     */
+    static WebSocketHandler create(
+            final int settingsDebounce,
+            final int dedupWindow
+    ) {
+        new TurnCredentialService().setTurnSecret("secret-only-for-tests");
+
+        final TurnPool pool = new TurnPool();
+        ReflectionTestUtils.setField(pool, "SERVERS_PER_PEER", 2);
+        pool.configure(List.of(new TurnEndpoint("stun:127.0.0.1:3478", "turn:127.0.0.1:3478")));
+
+        final SessionReaper reaper = new SessionReaper();
+        ReflectionTestUtils.setField(reaper, "MAX_MISSED_PONGS", 3);
+
+        final NetworkIndex networkIndex = new NetworkIndex();
+        ReflectionTestUtils.setField(networkIndex, "IPV4_PREFIX", 32);
+        ReflectionTestUtils.setField(networkIndex, "IPV6_PREFIX", 64);
+
+        final NegotiationTracker negotiations = new NegotiationTracker();
+        ReflectionTestUtils.setField(negotiations, "MAX_TRACKED", 16);
+        ReflectionTestUtils.setField(negotiations, "TIMEOUT", 60);
+
+        final CandidateFilter candidates = new CandidateFilter();
+        ReflectionTestUtils.setField(candidates, "DEDUP_WINDOW", dedupWindow);
+        ReflectionTestUtils.setField(candidates, "MAX_TRACKED", 16);
+
+        final WebSocketHandler handler = new WebSocketHandler(
+                reaper,
+                new IceServerService(pool),
+                new SignalCapture(),
+                new OverloadController(),
+                new RegistryStats(),
+                new AdmissionController(),
+                new ShardExecutor(),
+                networkIndex,
+                negotiations,
+                candidates,
+                new SdpMinimizer(),
+                new LogSampler()
+        );
+        ReflectionTestUtils.setField(handler, "REFRESH_MARGIN", 45);
+        ReflectionTestUtils.setField(handler, "SETTINGS_DEBOUNCE", settingsDebounce);
+
+        return handler;
+    }
+
+}
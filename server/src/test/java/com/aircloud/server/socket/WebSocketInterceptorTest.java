@@ -0,0 +1,113 @@
+package com.aircloud.server.socket;
+
+import com.aircloud.server.network.ClientAddressResolver;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.server.ServletServerHttpRequest;
+import org.springframework.http.server.ServletServerHttpResponse;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+class WebSocketInterceptorTest {
+
+    private static final String PROXY = "173.245.48.17";
+
+    private final AdmissionController admission = new AdmissionController();
+
+    private final ClientAddressResolver clientAddresses = new ClientAddressResolver();
+
+    private final org.springframework.web.socket.WebSocketHandler wsHandler = mock(org.springframework.web.socket.WebSocketHandler.class);
+
+    private WebSocketInterceptor interceptor;
+
+    @BeforeEach
+    void configureInterceptor() {
+        ReflectionTestUtils.setField(admission, "MAX_HANDSHAKES", 16);
+        ReflectionTestUtils.setField(admission, "MAX_CONNECTIONS_PER_IP", 1);
+        ReflectionTestUtils.setField(admission, "RETRY_AFTER", 5);
+        admission.init();
+
+        ReflectionTestUtils.setField(clientAddresses, "CLIENT_IP_HEADER", "cf-connecting-ip");
+        ReflectionTestUtils.setField(clientAddresses, "TRUSTED_PROXIES", "173.245.48.0/20");
+        clientAddresses.start();
+
+        interceptor = new WebSocketInterceptor(admission, clientAddresses);
+    }
+
+    @Test
+    void testClientsBehindTrustedProxyAreAdmittedSeparately() {
+        final Map<String, Object> first = new HashMap<>();
+        final Map<String, Object> second = new HashMap<>();
+
+        assertThat(handshake(PROXY, "203.0.113.7", new MockHttpServletResponse(), first)).isTrue();
+        assertThat(handshake(PROXY, "198.51.100.4", new MockHttpServletResponse(), second)).isTrue();
+
+        assertThat(first.get("ipAddress")).isEqualTo("203.0.113.7");
+        assertThat(second.get("ipAddress")).isEqualTo("198.51.100.4");
+    }
+
+    @Test
+    void testClientIsLimitedAcrossProxies() {
+        final MockHttpServletResponse response = new MockHttpServletResponse();
+
+        assertThat(handshake(PROXY, "203.0.113.7", new MockHttpServletResponse(), new HashMap<>())).isTrue();
+        assertThat(handshake("173.245.48.18", "203.0.113.7", response, new HashMap<>())).isFalse();
+        assertThat(response.getStatus()).isEqualTo(HttpStatus.TOO_MANY_REQUESTS.value());
+    }
+
+    @Test
+    void testUntrustedPeerIsLimitedOnItsOwnAddress() {
+        final Map<String, Object> attributes = new HashMap<>();
+
+        assertThat(handshake("198.51.100.9", "203.0.113.7", new MockHttpServletResponse(), attributes)).isTrue();
+        assertThat(attributes.get("ipAddress")).isEqualTo("198.51.100.9");
+        assertThat(handshake("198.51.100.9", "203.0.113.8", new MockHttpServletResponse(), new HashMap<>())).isFalse();
+    }
+
+    @Test
+    void testFailedUpgradeReleasesSlotOfClient() {
+        final MockHttpServletRequest request = request(PROXY, "203.0.113.7");
+        final MockHttpServletResponse response = new MockHttpServletResponse();
+
+        assertThat(interceptor.beforeHandshake(new ServletServerHttpRequest(request), new ServletServerHttpResponse(response), wsHandler, new HashMap<>()))
+                .isTrue();
+
+        response.setStatus(HttpStatus.BAD_REQUEST.value());
+        interceptor.afterHandshake(new ServletServerHttpRequest(request), new ServletServerHttpResponse(response), wsHandler, null);
+
+        assertThat(handshake(PROXY, "203.0.113.7", new MockHttpServletResponse(), new HashMap<>())).isTrue();
+    }
+
+    private boolean handshake(
+            final String remoteAddress,
+            final String clientAddress,
+            final MockHttpServletResponse response,
+            final Map<String, Object> attributes
+    ) {
+        return interceptor.beforeHandshake(
+                new ServletServerHttpRequest(request(remoteAddress, clientAddress)),
+                new ServletServerHttpResponse(response),
+                wsHandler,
+                attributes
+        );
+    }
+
+    private static MockHttpServletRequest request(
+            final String remoteAddress,
+            final String clientAddress
+    ) {
+        final MockHttpServletRequest request = new MockHttpServletRequest("GET", "/ws");
+        request.setRemoteAddr(remoteAddress);
+        request.addHeader("cf-connecting-ip", clientAddress);
+        return request;
+    }
+
+}
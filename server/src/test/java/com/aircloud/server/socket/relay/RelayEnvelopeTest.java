@@ -0,0 +1,89 @@
+package com.aircloud.server.socket.relay;
+
+import com.aircloud.server.socket.DiscoveryMode;
+import com.aircloud.server.socket.Peer;
+import com.aircloud.server.socket.dto.request.RequestType;
+import com.aircloud.server.socket.dto.response.IceCandidateResponse;
+import com.aircloud.server.socket.dto.response.RTCAnswerResponse;
+import com.aircloud.server.socket.dto.response.RTCApproveAnswerResponse;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class RelayEnvelopeTest {
+
+    private static final UUID TARGET_ID = UUID.fromString("6f1c2d3e-4b5a-4c6d-8e7f-901a2b3c4d5e");
+
+    private static final String OFFER = "{\"type\":\"offer\",\"sdp\":\"v=0\\r\\na=ice-ufrag:\\\"x\\\"\\r\\n\"}";
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    @Test
+    void testOfferMatchesJackson() throws Exception {
+        final Peer sender = sender("Quiet \"Otter\"");
+        final RelayFrame frame = relay(RequestType.OFFER, "offer", OFFER, ",\"discoveryMode\":\"DIRECT\"");
+
+        assertThat(mapper.readTree(RelayEnvelope.encode(sender, frame))).isEqualTo(mapper.readTree(mapper.writeValueAsString(
+                new RTCAnswerResponse(sender.getPeerId(), mapper.readTree(OFFER), sender.getName(), sender.getDevice(), DiscoveryMode.DIRECT)
+        )));
+    }
+
+    @Test
+    void testAnswerMatchesJackson() throws Exception {
+        final Peer sender = sender("Brave Heron");
+        final RelayFrame frame = relay(RequestType.ANSWER, "answer", OFFER, "");
+
+        assertThat(mapper.readTree(RelayEnvelope.encode(sender, frame))).isEqualTo(mapper.readTree(mapper.writeValueAsString(
+                new RTCApproveAnswerResponse(sender.getPeerId(), mapper.readTree(OFFER))
+        )));
+    }
+
+    @Test
+    void testCandidateIsCopiedVerbatim() throws Exception {
+        final String candidate = "{\"candidate\":\"candidate:1 1 udp 2122260223 192.0.2.1 54400 typ host\",\"sdpMLineIndex\":0}";
+        final Peer sender = sender("Brave Heron");
+        final String encoded = RelayEnvelope.encode(sender, relay(RequestType.ICE_CANDIDATE, "candidate", candidate, ""));
+
+        assertThat(encoded).contains(candidate);
+        assertThat(mapper.readTree(encoded)).isEqualTo(mapper.readTree(mapper.writeValueAsString(
+                new IceCandidateResponse(sender.getPeerId(), mapper.readTree(candidate))
+        )));
+    }
+
+    @Test
+    void testReplacedOpaqueIsUsed() throws Exception {
+        final String minimized = "{\"type\":\"offer\",\"sdp\":\"v=0\\r\\n\"}";
+        final JsonNode encoded = mapper.readTree(RelayEnvelope.encode(sender("Brave Heron"), relay(RequestType.ANSWER, "answer", OFFER, ""), minimized));
+
+        assertThat(encoded.get("answer")).isEqualTo(mapper.readTree(minimized));
+    }
+
+    private static RelayFrame relay(
+            final RequestType type,
+            final String field,
+            final String opaque,
+            final String extra
+    ) {
+        final RelayFrame frame = RelayFrame.parseAll(
+                "{\"type\":\"" + type + "\",\"data\":{\"peerId\":\"" + TARGET_ID + "\",\"" + field + "\":" + opaque + extra + "}}"
+        ).getFirst();
+
+        assertThat(frame.isRelayable()).isTrue();
+        return frame;
+    }
+
+    private static Peer sender(final String name) {
+        final Peer peer = mock(Peer.class);
+        when(peer.getPeerId()).thenReturn(UUID.randomUUID());
+        when(peer.getName()).thenReturn(name);
+        when(peer.getDevice()).thenReturn("Mac OS X");
+        return peer;
+    }
+
+}
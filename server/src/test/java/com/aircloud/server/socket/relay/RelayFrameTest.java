@@ -0,0 +1,97 @@
+package com.aircloud.server.socket.relay;
+
+import com.aircloud.server.socket.DiscoveryMode;
+import com.aircloud.server.socket.dto.request.BaseRequest;
+import com.aircloud.server.socket.dto.request.RequestType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RelayFrameTest {
+
+    private static final UUID PEER_ID = UUID.fromString("6f1c2d3e-4b5a-4c6d-8e7f-901a2b3c4d5e");
+
+    private static final String OFFER = "{\"type\":\"offer\",\"sdp\":\"v=0\\r\\no=- 1 2 IN IP4 127.0.0.1\\r\\n\"}";
+
+    private static final String CANDIDATE = "{\"candidate\":\"candidate:1 1 udp 2122260223 192.0.2.1 54400 typ host\",\"sdpMid\":\"0\"}";
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    @Test
+    void testRelayRequestKeepsOpaqueRange() {
+        final RelayFrame request = single("{\"type\":\"OFFER\",\"data\":{\"peerId\":\"" + PEER_ID + "\",\"offer\":" + OFFER + ",\"discoveryMode\":\"NETWORK\"}}");
+
+        assertThat(request.isRelayable()).isTrue();
+        assertThat(request.getPeerId()).isEqualTo(PEER_ID);
+        assertThat(request.getDiscoveryMode()).isEqualTo(DiscoveryMode.NETWORK);
+        assertThat(request.getFrame().substring(request.getOpaqueStart(), request.getOpaqueEnd())).isEqualTo(OFFER);
+        assertThat(request.getData()).isNull();
+    }
+
+    @Test
+    void testBatchIsScannedInOrder() {
+        final List<RelayFrame> batch = RelayFrame.parseAll("{\"type\":\"BATCH\",\"data\":["
+                + "{\"type\":\"ICE_CANDIDATE\",\"data\":{\"peerId\":\"" + PEER_ID + "\",\"candidate\":" + CANDIDATE + "}},"
+                + "{\"type\":\"END_OF_ICE_CANDIDATES\",\"data\":{\"peerId\":\"" + PEER_ID + "\"}}"
+                + "]}");
+
+        assertThat(batch).extracting(RelayFrame::getType).containsExactly(RequestType.ICE_CANDIDATE, RequestType.END_OF_ICE_CANDIDATES);
+        assertThat(batch).allMatch(RelayFrame::isBatched).allMatch(RelayFrame::isValid);
+        assertThat(batch.getFirst().isRelayable()).isTrue();
+        assertThat(batch.getFirst().getFrame().substring(batch.getFirst().getOpaqueStart(), batch.getFirst().getOpaqueEnd())).isEqualTo(CANDIDATE);
+    }
+
+    @Test
+    void testUnknownTypeOnlyInvalidatesItsElement() {
+        final List<RelayFrame> batch = RelayFrame.parseAll("{\"type\":\"BATCH\",\"data\":["
+                + "{\"type\":\"RENEGOTIATE\",\"data\":{\"peerId\":\"" + PEER_ID + "\"}},"
+                + "{\"type\":\"ICE_CANDIDATE\",\"data\":{\"peerId\":\"not-a-uuid\",\"candidate\":" + CANDIDATE + "}},"
+                + "{\"type\":\"END_OF_ICE_CANDIDATES\",\"data\":{\"peerId\":\"" + PEER_ID + "\"}}"
+                + "]}");
+
+        assertThat(batch).hasSize(3);
+        assertThat(batch).extracting(RelayFrame::isValid).containsExactly(false, false, true);
+        assertThat(batch.get(1).isRelayable()).isFalse();
+        assertThat(batch.get(2).getType()).isEqualTo(RequestType.END_OF_ICE_CANDIDATES);
+    }
+
+    @Test
+    void testDataOfOtherRequestsIsReadDuringScan() throws Exception {
+        final String message = "{\"type\":\"CHANGE_SETTINGS\",\"data\":{\"name\":\"Quiet Otter\",\"discoveryMode\":\"DIRECT\"}}";
+        final RelayFrame request = single(message);
+        final BaseRequest parsed = request.toRequest();
+
+        assertThat(request.isDataScanned()).isFalse();
+        assertThat(parsed.getType()).isEqualTo(RequestType.CHANGE_SETTINGS);
+        assertThat(parsed.getData()).isEqualTo(mapper.readValue(message, BaseRequest.class).getData());
+    }
+
+    @Test
+    void testDataBeforeTypeIsReadFromMessage() throws Exception {
+        final RelayFrame request = single("{\"data\":{\"peerId\":\"" + PEER_ID + "\"},\"type\":\"PEER_RECONNECT\"}");
+        final BaseRequest parsed = request.toRequest();
+
+        assertThat(request.isDataScanned()).isTrue();
+        assertThat(parsed.getType()).isEqualTo(RequestType.PEER_RECONNECT);
+        assertThat(parsed.getData().get("peerId").asText()).isEqualTo(PEER_ID.toString());
+    }
+
+    @Test
+    void testFramesThatAreNotObjectsAreLeftToJackson() {
+        assertThat(RelayFrame.parseAll("[]")).isNull();
+        assertThat(RelayFrame.parseAll("{\"type\":")).isNull();
+    }
+
+    private static RelayFrame single(final String frame) {
+        final List<RelayFrame> requests = RelayFrame.parseAll(frame);
+
+        assertThat(requests).hasSize(1);
+        assertThat(requests.getFirst().isBatched()).isFalse();
+        return requests.getFirst();
+    }
+
+}
@@ -0,0 +1,71 @@
+package com.aircloud.server.socket.template;
+
+import com.aircloud.server.socket.DiscoveryMode;
+import com.aircloud.server.socket.IceServer;
+import com.aircloud.server.socket.dto.response.*;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ResponseTemplatesTest {
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    @Test
+    void testTemplatesMatchJackson() throws Exception {
+        final UUID peerId = UUID.randomUUID();
+
+        assertMatchesJackson(new PeerDisconnectResponse(peerId));
+        assertMatchesJackson(new PeerDisconnectResponse(null));
+        assertMatchesJackson(new EndOfIceCandidatesResponse(peerId));
+        assertMatchesJackson(new RTCOfferResponse(peerId, "Quiet \"Otter\"\n", "Mac OS X", DiscoveryMode.NETWORK));
+        assertMatchesJackson(new RTCOfferResponse(peerId, null, null, null));
+        assertMatchesJackson(new PingPongResponse("header.payload.signature", null));
+    }
+
+    @Test
+    void testIceServersAreEncodedOnce() throws Exception {
+        final IceServer stun = new IceServer();
+        stun.setUrls("stun:127.0.0.1:3478");
+
+        final IceServer turn = new IceServer();
+        turn.setUrls("turn:127.0.0.1:3478?transport=tcp");
+        turn.setUsername("1700000000:peer");
+        turn.setCredential("c3VwZXI+c2VjcmV0/w==");
+
+        final List<IceServer> iceServers = List.of(stun, turn);
+
+        assertMatchesJackson(new PingPongResponse("token", iceServers));
+        assertThat(turn.getEncoded()).isNotNull();
+
+        final String encoded = turn.getEncoded();
+        assertMatchesJackson(new PingPongResponse("renewed", iceServers));
+        assertThat(turn.getEncoded()).isSameAs(encoded);
+    }
+
+    @Test
+    void testUuidIsFormattedLikeToString() {
+        final StringBuilder sb = new StringBuilder();
+
+        for (UUID uuid : List.of(UUID.randomUUID(), new UUID(0, 0), new UUID(-1, -1), new UUID(0x0123456789abcdefL, 0xfedcba9876543210L))) {
+            sb.setLength(0);
+            ResponseTemplates.appendUuid(sb, uuid);
+
+            assertThat(sb.toString()).isEqualTo("\"" + uuid + "\"");
+        }
+    }
+
+    @Test
+    void testResponsesWithoutTemplateAreLeftToJackson() {
+        assertThat(ResponseTemplates.encode(new PeerManualConnectResponse(null, false))).isNull();
+    }
+
+    private void assertMatchesJackson(final Object response) throws Exception {
+        assertThat(mapper.readTree(ResponseTemplates.encode(response))).isEqualTo(mapper.readTree(mapper.writeValueAsString(response)));
+    }
+
+}
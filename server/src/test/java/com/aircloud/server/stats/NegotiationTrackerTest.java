@@ -0,0 +1,72 @@
+package com.aircloud.server.stats;
+
+import com.aircloud.server.socket.DiscoveryMode;
+import com.aircloud.server.socket.dto.request.RequestType;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class NegotiationTrackerTest {
+
+    private final NegotiationTracker tracker = new NegotiationTracker();
+
+    private final UUID peerA = UUID.randomUUID();
+    private final UUID peerB = UUID.randomUUID();
+
+    @BeforeEach
+    void configure() {
+        ReflectionTestUtils.setField(tracker, "MAX_TRACKED", 1);
+        ReflectionTestUtils.setField(tracker, "TIMEOUT", 60);
+    }
+
+    @Test
+    void testCompletedNegotiationIsRecordedPerDiscoveryMode() {
+        tracker.started(peerA, peerB, DiscoveryMode.DIRECT);
+        tracker.relayed(peerA, peerB, RequestType.OFFER);
+        tracker.relayed(peerB, peerA, RequestType.ANSWER);
+        tracker.endOfCandidates(peerA, peerB);
+
+        assertThat(tracker.getTracked()).isEqualTo(1);
+
+        tracker.endOfCandidates(peerB, peerA);
+
+        final NegotiationTracker.Snapshot direct = tracker.snapshot().get(DiscoveryMode.DIRECT);
+
+        assertThat(tracker.getTracked()).isZero();
+        assertThat(direct.getCompleted()).isEqualTo(1);
+        assertThat(direct.getTimeToOffer().getCount()).isEqualTo(1);
+        assertThat(direct.getTimeToAnswer().getCount()).isEqualTo(1);
+        assertThat(direct.getTimeToIceComplete().getCount()).isEqualTo(1);
+        assertThat(tracker.snapshot().get(DiscoveryMode.NETWORK).getCompleted()).isZero();
+    }
+
+    @Test
+    void testExpiredAndRestartedNegotiationsAreAbandoned() {
+        tracker.started(peerA, peerB, DiscoveryMode.NETWORK);
+        tracker.started(peerB, peerA, DiscoveryMode.NETWORK);
+        tracker.relayed(peerB, peerA, RequestType.OFFER);
+
+        tracker.expire(System.nanoTime() + TimeUnit.SECONDS.toNanos(61));
+
+        final NegotiationTracker.Snapshot network = tracker.snapshot().get(DiscoveryMode.NETWORK);
+
+        assertThat(network.getAbandoned().get(NegotiationTracker.Step.OFFER)).isEqualTo(1);
+        assertThat(network.getAbandoned().get(NegotiationTracker.Step.ANSWER)).isEqualTo(1);
+        assertThat(tracker.getTracked()).isZero();
+    }
+
+    @Test
+    void testNegotiationsBeyondCapacityAreOnlyCounted() {
+        tracker.started(peerA, peerB, DiscoveryMode.NETWORK);
+        tracker.started(peerA, UUID.randomUUID(), DiscoveryMode.NETWORK);
+
+        assertThat(tracker.getTracked()).isEqualTo(1);
+        assertThat(tracker.getUntracked()).isEqualTo(1);
+    }
+
+}
@@ -0,0 +1,80 @@
+package com.aircloud.server.stats;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RegistryStatsTest {
+
+    private static final long NOW = 1_760_000_000L;
+
+    private final RegistryStats stats = new RegistryStats();
+
+    @Test
+    void testLastMinuteCoversSixtyFullSeconds() {
+        for (long second = NOW - 60; second <= NOW; second++) {
+            stats.countConnection(second);
+        }
+
+        assertThat(stats.getConnectionsPerSecond(60, NOW)).isEqualTo(1.0);
+        assertThat(stats.getConnectionsPerSecond(1, NOW)).isEqualTo(1.0);
+    }
+
+    @Test
+    void testReusedSlotStartsFromZero() {
+        stats.countConnection(NOW - 62);
+        stats.countConnection(NOW - 62);
+        stats.countConnection(NOW - 1);
+
+        assertThat(stats.getConnectionsPerSecond(1, NOW)).isEqualTo(1.0);
+        assertThat(stats.getConnectionsPerSecond(60, NOW)).isEqualTo(1.0 / 60);
+    }
+
+    @Test
+    void testLateCountDoesNotResetNewerSecond() {
+        stats.countConnection(NOW - 1);
+        stats.countConnection(NOW - 62);
+
+        assertThat(stats.getConnectionsPerSecond(1, NOW)).isEqualTo(1.0);
+    }
+
+    @Test
+    void testConcurrentCountsInNewSecondAreNotLost() throws Exception {
+        final int threads = 8;
+        final int perThread = 10_000;
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+        final CountDownLatch start = new CountDownLatch(1);
+
+        stats.countConnection(NOW - 62);
+
+        try {
+            for (int i = 0; i < threads; i++) {
+                executor.execute(() -> {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+
+                    for (int j = 0; j < perThread; j++) {
+                        stats.countConnection(NOW - 1);
+                    }
+                });
+            }
+
+            start.countDown();
+        } finally {
+            executor.shutdown();
+            assertThat(executor.awaitTermination(10, TimeUnit.SECONDS)).isTrue();
+        }
+
+        assertThat(stats.getConnectionsPerSecond(1, NOW)).isEqualTo(threads * perThread);
+    }
+
+}
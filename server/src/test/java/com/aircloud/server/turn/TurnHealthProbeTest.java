@@ -0,0 +1,87 @@
+package com.aircloud.server.turn;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.DataInputStream;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TurnHealthProbeTest {
+
+    private final TurnHealthProbe probe = new TurnHealthProbe(500);
+
+    @Test
+    void testUdpEndpointAnsweringBindingRequestIsAlive() throws Exception {
+        try (DatagramSocket responder = new DatagramSocket(0, InetAddress.getLoopbackAddress())) {
+            final Thread thread = new Thread(() -> {
+                try {
+                    final DatagramPacket request = new DatagramPacket(new byte[512], 512);
+                    responder.receive(request);
+
+                    final byte[] response = successResponse(request.getData());
+                    responder.send(new DatagramPacket(response, response.length, request.getSocketAddress()));
+                } catch (Exception ignored) {
+                }
+            });
+            thread.start();
+
+            final TurnEndpoint endpoint = new TurnEndpoint("stun:127.0.0.1:" + responder.getLocalPort(), "turn:127.0.0.1:" + responder.getLocalPort());
+
+            assertThat(probe.probe(endpoint)).isPositive();
+            thread.join();
+        }
+    }
+
+    @Test
+    void testTcpEndpointAnsweringBindingRequestIsAlive() throws Exception {
+        try (ServerSocket responder = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+            final Thread thread = new Thread(() -> {
+                try (Socket socket = responder.accept()) {
+                    final byte[] request = new byte[20];
+                    new DataInputStream(socket.getInputStream()).readFully(request);
+                    socket.getOutputStream().write(successResponse(request));
+                } catch (Exception ignored) {
+                }
+            });
+            thread.start();
+
+            final TurnEndpoint endpoint = new TurnEndpoint("stun:127.0.0.1:3478", "turn:127.0.0.1:" + responder.getLocalPort() + "?transport=tcp");
+
+            assertThat(endpoint.isTcp()).isTrue();
+            assertThat(probe.probe(endpoint)).isPositive();
+            thread.join();
+        }
+    }
+
+    @Test
+    void testSilentUdpEndpointIsDead() throws Exception {
+        try (DatagramSocket silent = new DatagramSocket(0, InetAddress.getLoopbackAddress())) {
+            final TurnEndpoint endpoint = new TurnEndpoint("stun:127.0.0.1:3478", "turn:127.0.0.1:" + silent.getLocalPort());
+
+            assertThat(probe.probe(endpoint)).isEqualTo(-1);
+        }
+    }
+
+    @Test
+    void testResponseWithOtherTransactionIdIsIgnored() {
+        final byte[] request = TurnHealthProbe.bindingRequest();
+        final byte[] response = successResponse(TurnHealthProbe.bindingRequest());
+
+        assertThat(TurnHealthProbe.isResponseTo(request, response, response.length)).isFalse();
+        assertThat(TurnHealthProbe.isResponseTo(request, successResponse(request), 20)).isTrue();
+    }
+
+    private static byte[] successResponse(final byte[] request) {
+        final byte[] response = new byte[20];
+        System.arraycopy(request, 0, response, 0, 20);
+        response[0] = 0x01;
+        response[1] = 0x01;
+        return response;
+    }
+
+}
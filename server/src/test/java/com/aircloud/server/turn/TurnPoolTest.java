@@ -0,0 +1,52 @@
+package com.aircloud.server.turn;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TurnPoolTest {
+
+    @Test
+    void testPoolPrefersHealthyAndLeastLoadedEndpoints() {
+        final List<TurnEndpoint> endpoints = TurnPool.parse(
+                "stun:a:3478 turn:a:3478, stun:b:3478 turns:b:5349, stun:c:3478 turn:[::1]:3478?transport=tcp",
+                null,
+                null
+        );
+
+        assertThat(endpoints).extracting(TurnEndpoint::getHost).containsExactly("a", "b", "::1");
+        assertThat(endpoints.get(1).isTls()).isTrue();
+        assertThat(endpoints.get(1).getPort()).isEqualTo(5349);
+
+        endpoints.get(0).getAssignedPeers().set(10);
+        endpoints.get(2).setHealthy(false);
+
+        final TurnPool pool = pool(endpoints);
+
+        assertThat(pool.getVersion()).isEqualTo(1);
+        assertThat(pool.hasHealthy()).isTrue();
+        assertThat(pool.select()).extracting(TurnEndpoint::getHost).containsExactly("b", "a");
+    }
+
+    @Test
+    void testPoolWithoutHealthyEndpointsFallsBackToAll() {
+        final List<TurnEndpoint> endpoints = TurnPool.parse("stun:a:3478 turn:a:3478, stun:b:3478 turn:b:3478", null, null);
+        endpoints.forEach(endpoint -> endpoint.setHealthy(false));
+
+        final TurnPool pool = pool(endpoints);
+
+        assertThat(pool.hasHealthy()).isFalse();
+        assertThat(pool.select()).extracting(TurnEndpoint::getHost).containsExactlyInAnyOrder("a", "b");
+    }
+
+    private static TurnPool pool(final List<TurnEndpoint> endpoints) {
+        final TurnPool pool = new TurnPool();
+        ReflectionTestUtils.setField(pool, "SERVERS_PER_PEER", 2);
+        pool.configure(endpoints);
+        return pool;
+    }
+
+}